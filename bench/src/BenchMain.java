@@ -0,0 +1,38 @@
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BenchMain class runs every benchmark in this module with the gc profiler
+ * (allocation rate per operation) and writes the results as JSON to
+ * bench/results/jmh-result.json, so two releases can be diffed. It must be run
+ * from the project directory, since the model reads files/ relative to it. Any
+ * normal JMH command line options (e.g. a benchmark regex) are passed through.
+ */
+public class BenchMain {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new File("bench/results").mkdirs();
+        Options opts = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .forks(1)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("bench/results/jmh-result.json")
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,53 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * The HitTestBenchmark class measures BoardLayout.hit on boards from the classic 16
+ * matches up to a thousand heaps, over a fixed set of random clicks (scores are per
+ * click, so the inverse is hit tests per second). The time should not grow with
+ * the size of the board.
+ */
+@State(Scope.Thread)
+public class HitTestBenchmark {
+
+    private static final int CLICKS = 1024;
+
+    @Param({"4", "100", "1000"})
+    public int heaps;
+
+    private BoardLayout layout;
+    private int[] xs;
+    private int[] ys;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        long[] sizes = new long[heaps];
+        for (int r = 0; r < heaps; r++) {
+            sizes[r] = heaps == 4 ? 2 * r + 1 : 1 + rnd.nextInt(1000);
+        }
+        layout = BoardLayout.of(sizes, 3840, 2160);
+        xs = new int[CLICKS];
+        ys = new int[CLICKS];
+        for (int i = 0; i < CLICKS; i++) {
+            xs[i] = rnd.nextInt(3840);
+            ys[i] = rnd.nextInt(2160);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLICKS)
+    public long hit() {
+        long sum = 0;
+        for (int i = 0; i < CLICKS; i++) {
+            sum += layout.hit(xs[i], ys[i]);
+        }
+        return sum;
+    }
+}
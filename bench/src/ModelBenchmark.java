@@ -0,0 +1,67 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The ModelBenchmark class measures the hot paths of the Nim model: taking a
+ * match, ending a turn and undoing. Each benchmark leaves the board full again so
+ * every invocation does the same work. The journaled parameter compares a game
+ * writing a journal with a journal-free one. The journal is written to a
+ * temporary directory, so files/gameasfile.csv is left alone and forks running at
+ * once don't share a file.
+ */
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    @Param({"false", "true"})
+    public boolean journaled;
+
+    private Path dir;
+    private Nim n;
+
+    @Setup
+    public void setup() throws IOException {
+        if (journaled) {
+            dir = Files.createTempDirectory("nim-model");
+            n = new Nim(dir.resolve("game.csv").toString());
+        } else {
+            n = new Nim(false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        n.close();
+        if (dir != null) {
+            // the journal and anything the game left next to it
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean moveUndo() {
+        n.move(3, 0);
+        return n.undo();
+    }
+
+    @Benchmark
+    public boolean moveTurnDoneUndo() {
+        n.move(3, 0);
+        n.move(3, 1);
+        n.turnDone();
+        return n.undo();
+    }
+}
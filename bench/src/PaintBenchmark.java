@@ -0,0 +1,52 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * The PaintBenchmark class measures GameBoard.paintComponent drawing a full board
+ * into an offscreen image, so it runs headless and without a window. paintOneMatch
+ * clips to a single match, the way repaintDirty repaints after a click.
+ */
+@State(Scope.Thread)
+public class PaintBenchmark {
+
+    private GameBoard board;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setup() {
+        System.setProperty("java.awt.headless", "true");
+        board = new GameBoard(new JLabel());
+        board.setSize(GameBoard.BOARD_WIDTH, GameBoard.BOARD_HEIGHT);
+        image = new BufferedImage(GameBoard.BOARD_WIDTH, GameBoard.BOARD_HEIGHT,
+                BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintFullBoard() {
+        g.setClip(null);
+        board.paintComponent(g);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage paintOneMatch() {
+        // bottom row, first match
+        g.setClip(32, 300, MatchSprite.WIDTH, MatchSprite.HEIGHT);
+        board.paintComponent(g);
+        return image;
+    }
+}
@@ -0,0 +1,75 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The ReplayBenchmark class measures walking through logs of different lengths with
+ * replayJournal, and unpause restoring the checkpoint taken by pause instead. The
+ * log alternates a move and its undo and ends with one more move, so the game is
+ * always in the same state after the replay and can be paused again. The logs are
+ * written to a temporary directory, so files/gameasfile.csv is left alone.
+ */
+@State(Scope.Thread)
+public class ReplayBenchmark {
+
+    @Param({"10", "1000", "1000000"})
+    public int lines;
+
+    private Path dir;
+    private Nim n;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("nim-replay");
+        n = new Nim(dir.resolve("game.csv").toString());
+        n.move(3, 0);
+        n.pause();
+        // the game won't write while paused, so the log can be swapped underneath it
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(n.getPath(), false))) {
+            w.write("start");
+            for (int i = 1; i < lines - 1; i++) {
+                w.write(i % 2 == 1 ? "\nmove,1,3,0" : "\nundo,1,3,0");
+            }
+            w.write("\nmove,1,3,0");
+        }
+        // replay once so the checkpoint matches the new log
+        n.unpause();
+        n.pause();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        n.close();
+        // the log and anything the game left next to it
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public int replay() {
+        n.replayJournal();
+        return n.getNumLeft();
+    }
+
+    @Benchmark
+    public int unpauseFromCheckpoint() {
+        n.unpause();
+        n.pause();
+        return n.getNumLeft();
+    }
+}
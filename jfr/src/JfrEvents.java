@@ -0,0 +1,192 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JfrEvents class holds the JDK Flight Recorder events of NimEvents and
+ * records them. It is only loaded by NimEvents, by name, when the JVM has
+ * jdk.jfr, so nothing else in the game links the flight recorder.
+ *
+ * Recording events needs a JDK with jdk.jfr (11 or later, or 8u262 and later),
+ * and compiling its module (jfr/, language level 11) needs JDK 11 or later.
+ */
+final class JfrEvents implements NimEvents.Recorder {
+
+    private static final EventType[] TYPES = {
+        EventType.getEventType(Move.class),
+        EventType.getEventType(TurnDone.class),
+        EventType.getEventType(Undo.class),
+        EventType.getEventType(Replay.class),
+        EventType.getEventType(JournalFlush.class),
+        EventType.getEventType(Paint.class),
+    };
+
+    JfrEvents() {
+    }
+
+    @Override
+    public Object begin(int kind) {
+        if (!TYPES[kind].isEnabled()) {
+            return null;
+        }
+        Event e;
+        switch (kind) {
+            case NimEvents.MOVE:
+                e = new Move();
+                break;
+            case NimEvents.TURN_DONE:
+                e = new TurnDone();
+                break;
+            case NimEvents.UNDO:
+                e = new Undo();
+                break;
+            case NimEvents.REPLAY:
+                e = new Replay();
+                break;
+            case NimEvents.JOURNAL_FLUSH:
+                e = new JournalFlush();
+                break;
+            default:
+                e = new Paint();
+                break;
+        }
+        e.begin();
+        return e;
+    }
+
+    @Override
+    public void commitMove(Object event, int row, int col, boolean accepted) {
+        Move e = (Move) event;
+        e.row = row;
+        e.col = col;
+        e.accepted = accepted;
+        e.commit();
+    }
+
+    @Override
+    public void commitTurnDone(Object event, boolean accepted) {
+        TurnDone e = (TurnDone) event;
+        e.accepted = accepted;
+        e.commit();
+    }
+
+    @Override
+    public void commitUndo(Object event, boolean accepted) {
+        Undo e = (Undo) event;
+        e.accepted = accepted;
+        e.commit();
+    }
+
+    @Override
+    public void commitReplay(Object event, String file, long offset, long records) {
+        Replay e = (Replay) event;
+        e.file = file;
+        e.offset = offset;
+        e.records = records;
+        e.commit();
+    }
+
+    @Override
+    public void commitJournalFlush(Object event, String file, int records, boolean forced) {
+        JournalFlush e = (JournalFlush) event;
+        e.file = file;
+        e.records = records;
+        e.forced = forced;
+        e.commit();
+    }
+
+    @Override
+    public void commitPaint(Object event, int clipWidth, int clipHeight, int matches) {
+        Paint e = (Paint) event;
+        e.clipWidth = clipWidth;
+        e.clipHeight = clipHeight;
+        e.matches = matches;
+        e.commit();
+    }
+
+    @Name("nim.Move")
+    @Label("Move")
+    @Description("A match taken (or refused) by Nim.move")
+    @Category({"Nim", "Model"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Move extends Event {
+        @Label("Row")
+        public int row;
+        @Label("Column")
+        public int col;
+        @Label("Accepted")
+        public boolean accepted;
+    }
+
+    @Name("nim.TurnDone")
+    @Label("Turn Done")
+    @Description("A turn ended by Nim.turnDone")
+    @Category({"Nim", "Model"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class TurnDone extends Event {
+        @Label("Accepted")
+        public boolean accepted;
+    }
+
+    @Name("nim.Undo")
+    @Label("Undo")
+    @Description("A turn taken back by Nim.undo")
+    @Category({"Nim", "Model"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Undo extends Event {
+        @Label("Accepted")
+        public boolean accepted;
+    }
+
+    @Name("nim.Replay")
+    @Label("Replay")
+    @Description("Records of the file walked through, by unpause or replayJournal")
+    @Category({"Nim", "Journal"})
+    @Enabled(false)
+    public static final class Replay extends Event {
+        @Label("File")
+        public String file;
+        @Label("From Offset")
+        public long offset;
+        @Label("Records")
+        public long records;
+    }
+
+    @Name("nim.JournalFlush")
+    @Label("Journal Flush")
+    @Description("A batch of records written and flushed by the journal writer")
+    @Category({"Nim", "Journal"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class JournalFlush extends Event {
+        @Label("File")
+        public String file;
+        @Label("Records")
+        public int records;
+        @Label("Forced")
+        public boolean forced;
+    }
+
+    @Name("nim.Paint")
+    @Label("Paint")
+    @Description("GameBoard.paintComponent")
+    @Category({"Nim", "GUI"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Paint extends Event {
+        @Label("Clip Width")
+        public int clipWidth;
+        @Label("Clip Height")
+        public int clipHeight;
+        @Label("Matches")
+        public int matches;
+    }
+}
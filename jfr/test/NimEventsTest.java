@@ -0,0 +1,85 @@
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimEventsTest class tests that the flight recorder events of NimEvents are
+ * recorded with the profile files/nim.jfc, and that they are off without it.
+ */
+
+public class NimEventsTest {
+
+    @Test
+    public void recorderLoaded() {
+        assertTrue(NimEvents.RECORDER instanceof JfrEvents);
+    }
+
+    @Test
+    public void eventsOffByDefault() {
+        assertNull(NimEvents.begin(NimEvents.MOVE));
+        assertNull(NimEvents.begin(NimEvents.TURN_DONE));
+        assertNull(NimEvents.begin(NimEvents.PAINT));
+        // committing an event that is off does nothing
+        NimEvents.commitMove(null, 3, 0, true);
+    }
+
+    @Test
+    public void modelEventsRecorded() throws Exception {
+        File file = File.createTempFile("nim", ".jfr");
+        file.deleteOnExit();
+        Configuration profile;
+        try (FileReader r = new FileReader("files/nim.jfc")) {
+            profile = Configuration.create(r);
+        }
+        try (Recording recording = new Recording(profile)) {
+            recording.start();
+            assertNotNull(NimEvents.begin(NimEvents.MOVE));
+            Nim n = new Nim(false);
+            assertTrue(n.move(3, 0));
+            assertFalse(n.move(2, 0));
+            assertTrue(n.turnDone());
+            assertTrue(n.undo());
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+        int moves = 0;
+        int rejected = 0;
+        int turns = 0;
+        int undos = 0;
+        for (RecordedEvent e : events) {
+            switch (e.getEventType().getName()) {
+                case "nim.Move":
+                    moves++;
+                    if (!e.getBoolean("accepted")) {
+                        assertEquals(2, e.getInt("row"));
+                        rejected++;
+                    }
+                    break;
+                case "nim.TurnDone":
+                    assertTrue(e.getBoolean("accepted"));
+                    turns++;
+                    break;
+                case "nim.Undo":
+                    assertTrue(e.getBoolean("accepted"));
+                    undos++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        assertEquals(2, moves);
+        assertEquals(1, rejected);
+        assertEquals(1, turns);
+        assertEquals(1, undos);
+    }
+}
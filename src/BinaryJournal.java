@@ -0,0 +1,471 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * The BinaryJournal class is a compact binary version of gameasfile.csv. A file
+ * starts with a header (the bytes NIMJ and a version byte) followed by records of
+ * one or two bytes each:
+ *
+ *   bits 7-6 type (0 move, 1 done, 2 undo, 3 extended)
+ *   bit  5   player (0 player 1, 1 player 2)
+ *   bits 4-3 row
+ *   bits 2-0 column (move only)
+ *
+ * An undo is followed by a second byte with one bit per column put back. Extended
+ * records use the low five bits as a sub-type: a redo (version 2 and up, one byte)
+ * or a checksum, followed by the CRC32 (4 bytes, big endian) of every record byte
+ * since the header or the previous checksum. The Writer adds one every CHECKSUM_INTERVAL records and
+ * when it is closed, and the Reader checks each one it reaches.
+ *
+ * In memory a record is an int holding its first byte, with the undo column mask in
+ * the second byte, so parsing a csv line (parseCsv) and reading a binary record give
+ * the same value. There is also a converter in both directions (undo columns come
+ * back in ascending order), run from the command line as:
+ * BinaryJournal tobinary|tocsv [in] [out]
+ */
+public final class BinaryJournal {
+
+    public static final byte[] MAGIC = {'N', 'I', 'M', 'J'};
+    public static final int VERSION = 2;
+
+    // record types
+    public static final int MOVE = 0;
+    public static final int DONE = 1;
+    public static final int UNDO = 2;
+    public static final int EXTENDED = 3;
+    // extended sub-types
+    public static final int CHECKSUM = 0;
+    public static final int REDO = 1;
+
+    // records between checksums written by Writer
+    public static final int CHECKSUM_INTERVAL = 256;
+    // returned for lines and reads that aren't records (header line, blank line, end of file)
+    public static final int NONE = -1;
+
+    private BinaryJournal() {
+    }
+
+    // the following build records
+    public static int move(boolean player1, int r, int c) {
+        return MOVE << 6 | (player1 ? 0 : 1 << 5) | r << 3 | c;
+    }
+
+    public static int done(boolean player1) {
+        return DONE << 6 | (player1 ? 0 : 1 << 5);
+    }
+
+    public static int undo(boolean player1, int r, int cols) {
+        return UNDO << 6 | (player1 ? 0 : 1 << 5) | r << 3 | cols << 8;
+    }
+
+    public static int redo(boolean player1) {
+        return EXTENDED << 6 | (player1 ? 0 : 1 << 5) | REDO;
+    }
+
+    // the following read the fields of a record
+    public static int type(int record) {
+        return (record >> 6) & 3;
+    }
+
+    public static boolean isPlayer1(int record) {
+        return (record & 1 << 5) == 0;
+    }
+
+    public static int row(int record) {
+        return (record >> 3) & 3;
+    }
+
+    public static int col(int record) {
+        return record & 7;
+    }
+
+    public static int subType(int record) {
+        return record & 0x1F;
+    }
+
+    public static int cols(int record) {
+        return (record >> 8) & 0x7F;
+    }
+
+    /**
+     * Parses one line of gameasfile.csv without splitting it into strings
+     * @param line line such as move,1,3,4 or done,2 or undo,1,2,0,1
+     * @return the record, or NONE for the start line and blank lines
+     * @throws IllegalArgumentException if the line isn't a record, has a match off the
+     *         board or has fields left over
+     */
+    public static int parseCsv(String line) {
+        return parseCsv(line.getBytes(StandardCharsets.US_ASCII), 0, line.length());
+    }
+
+    /**
+     * Parses one line of gameasfile.csv straight from the bytes of the file
+     * @param b buffer holding the line
+     * @param from index of the first byte of the line
+     * @param to index just past the last byte of the line (without the newline)
+     * @return the record, or NONE for the start line and blank lines
+     * @throws IllegalArgumentException if the line isn't a record, has a match off the
+     *         board or has fields left over
+     */
+    public static int parseCsv(byte[] b, int from, int to) {
+        if (to > from && b[to - 1] == '\r') {
+            to--;
+        }
+        if (to == from || (to - from == 5 && startsWith(b, from, "start"))) {
+            return NONE;
+        }
+        // every record is a four letter word, a comma and the player
+        if (to - from < 6 || b[from + 4] != ',' || (b[from + 5] != '1' && b[from + 5] != '2')) {
+            throw improper(b, from, to);
+        }
+        boolean player1 = b[from + 5] == '1';
+        int[] pos = {from + 6, to};
+        int record;
+        if (startsWith(b, from, "move")) {
+            int r = nextInt(b, pos, Nim.ROWS - 1);
+            int c = nextInt(b, pos, 2 * r);
+            record = move(player1, r, c);
+        } else if (startsWith(b, from, "done")) {
+            record = done(player1);
+        } else if (startsWith(b, from, "redo")) {
+            record = redo(player1);
+        } else if (startsWith(b, from, "undo")) {
+            int r = nextInt(b, pos, Nim.ROWS - 1);
+            int cols = 1 << nextInt(b, pos, 2 * r);
+            while (pos[0] < to) {
+                cols |= 1 << nextInt(b, pos, 2 * r);
+            }
+            record = undo(player1, r, cols);
+        } else {
+            throw improper(b, from, to);
+        }
+        // nothing may follow the last field
+        if (pos[0] != to) {
+            throw improper(b, from, to);
+        }
+        return record;
+    }
+
+    private static IllegalArgumentException improper(byte[] b, int from, int to) {
+        return new IllegalArgumentException(new String(b, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean startsWith(byte[] b, int from, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (b[from + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper function reading the number after the comma at pos[0], moving pos[0] past it
+     * @param b buffer holding the line
+     * @param pos {index of the comma, end of the line}
+     * @param max largest value allowed, so a row or column can't spill into the
+     *            other fields of the record
+     * @return the number
+     */
+    private static int nextInt(byte[] b, int[] pos, int max) {
+        int i = pos[0];
+        int end = pos[1];
+        if (i >= end || b[i] != ',') {
+            throw new IllegalArgumentException("expected a number");
+        }
+        i++;
+        int v = 0;
+        int start = i;
+        while (i < end && b[i] >= '0' && b[i] <= '9') {
+            v = v * 10 + b[i] - '0';
+            i++;
+        }
+        if (i == start || i - start > 1 || v > max) {
+            throw new IllegalArgumentException("expected a row or column");
+        }
+        pos[0] = i;
+        return v;
+    }
+
+    /**
+     * Formats a record the way Nim writes it to gameasfile.csv (without the newline)
+     * @param record record to format
+     * @return csv line
+     */
+    public static String toCsv(int record) {
+        String p = isPlayer1(record) ? "1" : "2";
+        switch (type(record)) {
+            case MOVE:
+                return "move," + p + "," + row(record) + "," + col(record);
+            case DONE:
+                return "done," + p;
+            case UNDO:
+                StringBuilder sb = new StringBuilder("undo,").append(p).append(',').append(row(record));
+                for (int c = 0; c < 7; c++) {
+                    if ((cols(record) & 1 << c) != 0) {
+                        sb.append(',').append(c);
+                    }
+                }
+                return sb.toString();
+            case EXTENDED:
+                if (subType(record) == REDO) {
+                    return "redo," + p;
+                }
+                throw new IllegalArgumentException("not a game record: " + record);
+            default:
+                throw new IllegalArgumentException("not a game record: " + record);
+        }
+    }
+
+    /**
+     * Checks whether a stream starts with the binary header, without consuming it
+     * @param in stream supporting mark and reset
+     * @return true if the stream holds a binary journal
+     * @throws IOException if the stream can't be read
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != (b & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * The Writer class writes records to a binary journal, adding checksums.
+     */
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private int sinceChecksum;
+
+        /**
+         * Starts a new journal, writing the header
+         * @param out stream to write to, closed with the writer
+         * @throws IOException if the header can't be written
+         */
+        public Writer(OutputStream out) throws IOException {
+            this.out = out;
+            out.write(MAGIC);
+            out.write(VERSION);
+        }
+
+        /**
+         * Writes one record
+         * @param record record as built by move, done or undo
+         * @throws IOException if the record can't be written
+         */
+        public void write(int record) throws IOException {
+            put(record & 0xFF);
+            if (type(record) == UNDO) {
+                put(cols(record));
+            }
+            if (++sinceChecksum == CHECKSUM_INTERVAL) {
+                writeChecksum();
+            }
+        }
+
+        private void put(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+        }
+
+        private void writeChecksum() throws IOException {
+            long v = crc.getValue();
+            out.write(EXTENDED << 6 | CHECKSUM);
+            out.write((int) (v >>> 24));
+            out.write((int) (v >>> 16));
+            out.write((int) (v >>> 8));
+            out.write((int) v);
+            crc.reset();
+            sinceChecksum = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (sinceChecksum > 0) {
+                writeChecksum();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * The Reader class reads records back from a binary journal, checking the
+     * header and every checksum it passes.
+     */
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final CRC32 crc = new CRC32();
+        // byte offset in the file just after the last record (or checksum) read
+        private long position;
+        // false until the first checksum when reading starts in the middle of a file
+        private boolean verified = true;
+
+        /**
+         * Opens a journal, reading its header
+         * @param in stream positioned at the header, closed with the reader
+         * @throws IOException if the header is missing or has an unknown version
+         */
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            byte[] magic = new byte[MAGIC.length];
+            this.in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("not a binary journal");
+                }
+            }
+            int version = this.in.read();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("unsupported journal version " + version);
+            }
+            position = MAGIC.length + 1;
+        }
+
+        /**
+         * Continues reading a journal from the middle. The header isn't read, and the
+         * first checksum is skipped since it also covers bytes before the offset.
+         * @param in stream positioned at offset, closed with the reader
+         * @param offset byte offset of the stream in the file, just after some record
+         */
+        public Reader(InputStream in, long offset) {
+            this.in = new DataInputStream(in);
+            this.position = offset;
+            this.verified = false;
+        }
+
+        /**
+         * gets the byte offset just after the last record (or checksum) read by next
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Reads the next game record, checking any checksums on the way
+         * @return the record, or NONE at the end of the journal
+         * @throws IOException if a checksum doesn't match or the file is cut off
+         */
+        public int next() throws IOException {
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    return NONE;
+                }
+                if (type(b) == EXTENDED && subType(b) == REDO) {
+                    crc.update(b);
+                    position++;
+                    return b;
+                }
+                if (type(b) == EXTENDED) {
+                    if (subType(b) != CHECKSUM) {
+                        throw new IOException("unknown record " + b);
+                    }
+                    long expected = in.readInt() & 0xFFFFFFFFL;
+                    if (verified && expected != crc.getValue()) {
+                        throw new IOException("journal checksum mismatch");
+                    }
+                    crc.reset();
+                    verified = true;
+                    position += 5;
+                    continue;
+                }
+                crc.update(b);
+                if (type(b) != UNDO) {
+                    position++;
+                    return b;
+                }
+                int cols = in.read();
+                if (cols < 0) {
+                    throw new EOFException("undo record cut off");
+                }
+                crc.update(cols);
+                position += 2;
+                return b | cols << 8;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a csv journal to the binary format
+     * @param csv path of the csv file
+     * @param bin path of the binary file to write
+     * @throws IOException if either file can't be used or a line isn't a record
+     */
+    public static void csvToBinary(String csv, String bin) throws IOException {
+        try (BufferedReader r = new BufferedReader(new FileReader(csv));
+             Writer w = new Writer(new BufferedOutputStream(new FileOutputStream(bin)))) {
+            String s = r.readLine();
+            while (s != null) {
+                int record;
+                try {
+                    record = parseCsv(s);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("improper formatting: " + s);
+                }
+                if (record != NONE) {
+                    w.write(record);
+                }
+                s = r.readLine();
+            }
+        }
+    }
+
+    /**
+     * Converts a binary journal back to the csv format Nim writes
+     * @param bin path of the binary file
+     * @param csv path of the csv file to write
+     * @throws IOException if either file can't be used or the journal is corrupt
+     */
+    public static void binaryToCsv(String bin, String csv) throws IOException {
+        try (Reader r = new Reader(new BufferedInputStream(new FileInputStream(bin)));
+             BufferedWriter w = new BufferedWriter(new FileWriter(csv))) {
+            w.write("start");
+            int record = r.next();
+            while (record != NONE) {
+                w.write("\n" + toCsv(record));
+                record = r.next();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !(args[0].equals("tobinary") || args[0].equals("tocsv"))) {
+            System.out.println("usage: BinaryJournal tobinary|tocsv [in] [out]");
+            return;
+        }
+        if (args[0].equals("tobinary")) {
+            csvToBinary(args.length > 1 ? args[1] : "./files/gameasfile.csv",
+                    args.length > 2 ? args[2] : "./files/gameasfile.nimj");
+        } else {
+            binaryToCsv(args.length > 1 ? args[1] : "./files/gameasfile.nimj",
+                    args.length > 2 ? args[2] : "./files/gameasfile.csv");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * The BinaryJournalTest class tests the binary journal format and its csv parsing.
+ */
+
+public class BinaryJournalTest {
+
+    @Test
+    public void parseCsvRecords() {
+        int m = BinaryJournal.parseCsv("move,2,3,6");
+        assertEquals(BinaryJournal.MOVE, BinaryJournal.type(m));
+        assertFalse(BinaryJournal.isPlayer1(m));
+        assertEquals(3, BinaryJournal.row(m));
+        assertEquals(6, BinaryJournal.col(m));
+        int u = BinaryJournal.parseCsv("undo,1,2,4,0");
+        assertEquals(BinaryJournal.UNDO, BinaryJournal.type(u));
+        assertEquals(0x11, BinaryJournal.cols(u));
+        assertEquals(BinaryJournal.NONE, BinaryJournal.parseCsv("start"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseCsvImproper() {
+        BinaryJournal.parseCsv("jump,1,2");
+    }
+
+    @Test
+    public void parseCsvRejectsOutOfRange() {
+        // rows past 3, columns past the end of their row, a bad player, extra fields
+        String[] lines = {"move,1,5,0", "move,1,4,0", "move,1,1,3", "move,2,0,1", "move,2,3,7",
+            "undo,1,1,0,3", "undo,2,9,0", "undo,1,2", "move,3,1,0", "move,1,1,0,1", "move,1,1,0,",
+            "done,1,1", "redo,2,0", "done,12", "move,1,01,0", "move,1,3,99999999999"};
+        for (String l : lines) {
+            try {
+                int record = BinaryJournal.parseCsv(l);
+                fail(l + " parsed as " + BinaryJournal.toCsv(record));
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void csvToBinaryRejectsOutOfRange() throws IOException {
+        File csv = File.createTempFile("journal", ".csv");
+        csv.deleteOnExit();
+        File bin = File.createTempFile("journal", ".nimj");
+        bin.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(csv)) {
+            out.write("start\nmove,1,3,0\ndone,1\nmove,1,5,0\ndone,2\n".getBytes("US-ASCII"));
+        }
+        try {
+            BinaryJournal.csvToBinary(csv.getPath(), bin.getPath());
+            fail("converted a journal with row 5");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("move,1,5,0"));
+        }
+    }
+
+    @Test
+    public void csvRoundTrip() {
+        String[] lines = {"move,1,3,4", "done,1", "undo,2,2,0,1", "redo,2"};
+        for (String l : lines) {
+            assertEquals(l, BinaryJournal.toCsv(BinaryJournal.parseCsv(l)));
+        }
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryJournal.Writer w = new BinaryJournal.Writer(bytes);
+        int n = BinaryJournal.CHECKSUM_INTERVAL + 10;
+        for (int i = 0; i < n; i++) {
+            w.write(i % 2 == 0 ? BinaryJournal.move(true, 3, 0) : BinaryJournal.undo(true, 3, 1));
+        }
+        w.close();
+        // header, n records, every other one two bytes, plus two checksums
+        assertEquals(5 + n + n / 2 + 10, bytes.size());
+        BinaryJournal.Reader r = new BinaryJournal.Reader(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int i = 0; i < n; i++) {
+            int rec = r.next();
+            assertEquals(i % 2 == 0 ? BinaryJournal.MOVE : BinaryJournal.UNDO, BinaryJournal.type(rec));
+        }
+        assertEquals(BinaryJournal.NONE, r.next());
+    }
+
+    @Test(expected = IOException.class)
+    public void binaryChecksumMismatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryJournal.Writer w = new BinaryJournal.Writer(bytes);
+        w.write(BinaryJournal.move(true, 1, 1));
+        w.close();
+        byte[] b = bytes.toByteArray();
+        b[5] ^= 1;
+        BinaryJournal.Reader r = new BinaryJournal.Reader(new ByteArrayInputStream(b));
+        r.next();
+        r.next();
+    }
+
+    @Test
+    public void journalReaderResumesBinaryPastChecksum() throws IOException {
+        File f = File.createTempFile("journal", ".nimj");
+        f.deleteOnExit();
+        BinaryJournal.Writer w = new BinaryJournal.Writer(new FileOutputStream(f));
+        for (int i = 0; i < 300; i++) {
+            w.write(BinaryJournal.move(i % 2 == 0, 3, i % 7));
+        }
+        w.close();
+        long offset;
+        try (JournalReader r = new JournalReader(f.getPath())) {
+            assertTrue(r.isBinary());
+            for (int i = 0; i < 100; i++) {
+                r.next();
+            }
+            offset = r.getPosition();
+        }
+        // the checksum after record 256 covers bytes before the offset, so it is skipped
+        try (JournalReader r = new JournalReader(f.getPath(), offset)) {
+            for (int i = 100; i < 300; i++) {
+                assertEquals(BinaryJournal.move(i % 2 == 0, 3, i % 7), r.next());
+            }
+            assertEquals(BinaryJournal.NONE, r.next());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * The BoardLayout class places the matches of a board of any shape in a component
+ * of any size, and maps a click back to the match under it. Rows are stacked top to
+ * bottom and centered, each match is a cell with the proportions of the match
+ * image, and the cells are as big as they can be while the longest row and all the
+ * rows still fit. For the classic 1, 3, 5, 7 board in a 288 x 400 panel this gives
+ * the original 32 x 100 matches, centered as before.
+ *
+ * Positions and hit tests are plain arithmetic on a few per-row values, so both
+ * take constant time however many heaps and matches the board has, and the layout
+ * only stores an int per row. Cells are packed like NimAI moves: the row in the
+ * high 32 bits and the column in the low 32 bits.
+ */
+public class BoardLayout {
+
+    // returned by hit when there is no match under the point
+    public static final long NONE = -1;
+
+    // number of matches in each row
+    private final int[] lengths;
+    // left edge of each row
+    private final int[] rowX;
+    // top edge of the first row
+    private final int top;
+    // size of one cell
+    private final int cellWidth;
+    private final int cellHeight;
+    // size of the component laid out
+    private final int width;
+    private final int height;
+
+    /**
+     * Lays out a board
+     * @param lengths number of matches in each row (copied)
+     * @param width width of the component
+     * @param height height of the component
+     */
+    public BoardLayout(int[] lengths, int width, int height) {
+        if (lengths.length == 0) {
+            throw new IllegalArgumentException("board needs at least one row");
+        }
+        int longest = 1;
+        for (int len : lengths) {
+            if (len < 0) {
+                throw new IllegalArgumentException("row lengths can't be negative");
+            }
+            longest = Math.max(longest, len);
+        }
+        this.lengths = lengths.clone();
+        this.width = width;
+        this.height = height;
+        // as tall as the rows allow, unless the longest row then doesn't fit across
+        int h = Math.min(height / lengths.length,
+                (int) ((long) width * MatchSprite.HEIGHT / ((long) longest * MatchSprite.WIDTH)));
+        this.cellHeight = Math.max(1, h);
+        this.cellWidth = Math.max(1, cellHeight * MatchSprite.WIDTH / MatchSprite.HEIGHT);
+        this.top = (height - lengths.length * cellHeight) / 2;
+        this.rowX = new int[lengths.length];
+        for (int r = 0; r < lengths.length; r++) {
+            rowX[r] = (width - lengths[r] * cellWidth) / 2;
+        }
+    }
+
+    /**
+     * Lays out the classic board of Nim, row r holding 2 * r + 1 matches
+     * @param width width of the component
+     * @param height height of the component
+     * @return new layout
+     */
+    public static BoardLayout classic(int width, int height) {
+        int[] lengths = new int[Nim.ROWS];
+        for (int r = 0; r < Nim.ROWS; r++) {
+            lengths[r] = 2 * r + 1;
+        }
+        return new BoardLayout(lengths, width, height);
+    }
+
+    /**
+     * Lays out a HeapNim board as it started, one match per unit of each heap
+     * @param heaps heap sizes, each at most Integer.MAX_VALUE
+     * @param width width of the component
+     * @param height height of the component
+     * @return new layout
+     */
+    public static BoardLayout of(long[] heaps, int width, int height) {
+        int[] lengths = new int[heaps.length];
+        for (int r = 0; r < heaps.length; r++) {
+            lengths[r] = (int) Math.min(Integer.MAX_VALUE, heaps[r]);
+        }
+        return new BoardLayout(lengths, width, height);
+    }
+
+    /**
+     * Finds the match under a point
+     * @param x x coordinate in the component
+     * @param y y coordinate in the component
+     * @return packed cell (see row and col), or NONE if the point isn't on a match
+     */
+    public long hit(int x, int y) {
+        int dy = y - top;
+        if (dy < 0) {
+            return NONE;
+        }
+        int r = dy / cellHeight;
+        if (r >= lengths.length) {
+            return NONE;
+        }
+        int dx = x - rowX[r];
+        if (dx < 0) {
+            return NONE;
+        }
+        int c = dx / cellWidth;
+        if (c >= lengths[r]) {
+            return NONE;
+        }
+        return pack(r, c);
+    }
+
+    // the following pack and unpack cells returned by hit
+    public static long pack(int row, int col) {
+        return (long) row << 32 | col;
+    }
+
+    public static int row(long cell) {
+        return (int) (cell >>> 32);
+    }
+
+    public static int col(long cell) {
+        return (int) cell;
+    }
+
+    /**
+     * gets the left edge of a match
+     * @param r row of the match
+     * @param c column of the match
+     */
+    public int getX(int r, int c) {
+        return rowX[r] + c * cellWidth;
+    }
+
+    /**
+     * gets the top edge of the matches of a row
+     * @param r row
+     */
+    public int getY(int r) {
+        return top + r * cellHeight;
+    }
+
+    // the following are get methods for the fields of this class
+    public int getCellWidth() {
+        return cellWidth;
+    }
+
+    public int getCellHeight() {
+        return cellHeight;
+    }
+
+    public int getNumRows() {
+        return lengths.length;
+    }
+
+    public int getRowLength(int r) {
+        return lengths[r];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
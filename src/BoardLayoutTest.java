@@ -0,0 +1,65 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The BoardLayoutTest class tests match positions and hit testing in BoardLayout.
+ */
+
+public class BoardLayoutTest {
+
+    @Test
+    public void classicMatchesOriginalPositions() {
+        BoardLayout l = BoardLayout.classic(GameBoard.BOARD_WIDTH, GameBoard.BOARD_HEIGHT);
+        assertEquals(32, l.getCellWidth());
+        assertEquals(100, l.getCellHeight());
+        assertEquals(128, l.getX(0, 0));
+        assertEquals(96, l.getX(1, 0));
+        assertEquals(160, l.getX(2, 3));
+        assertEquals(224, l.getX(3, 6));
+        assertEquals(0, l.getY(0));
+        assertEquals(300, l.getY(3));
+    }
+
+    @Test
+    public void hitClassic() {
+        BoardLayout l = BoardLayout.classic(GameBoard.BOARD_WIDTH, GameBoard.BOARD_HEIGHT);
+        assertEquals(BoardLayout.pack(0, 0), l.hit(140, 50));
+        assertEquals(BoardLayout.pack(1, 2), l.hit(170, 150));
+        assertEquals(BoardLayout.pack(3, 0), l.hit(32, 399));
+        assertEquals(BoardLayout.pack(3, 6), l.hit(255, 300));
+        assertEquals(BoardLayout.NONE, l.hit(100, 50));
+        assertEquals(BoardLayout.NONE, l.hit(31, 350));
+        assertEquals(BoardLayout.NONE, l.hit(256, 350));
+        assertEquals(BoardLayout.NONE, l.hit(140, 400));
+        assertEquals(BoardLayout.NONE, l.hit(-5, -5));
+    }
+
+    @Test
+    public void hitMatchesPositions() {
+        BoardLayout l = BoardLayout.of(new long[] {3, 1000, 0, 17, 250}, 1600, 900);
+        for (int r = 0; r < l.getNumRows(); r++) {
+            for (int c = 0; c < l.getRowLength(r); c++) {
+                long cell = l.hit(l.getX(r, c), l.getY(r));
+                assertEquals(r, BoardLayout.row(cell));
+                assertEquals(c, BoardLayout.col(cell));
+                cell = l.hit(l.getX(r, c) + l.getCellWidth() - 1, l.getY(r) + l.getCellHeight() - 1);
+                assertEquals(BoardLayout.pack(r, c), cell);
+            }
+        }
+        assertEquals(BoardLayout.NONE, l.hit(800, l.getY(2)));
+    }
+
+    @Test
+    public void fitsLongestRow() {
+        BoardLayout l = BoardLayout.of(new long[] {1, 1000}, 1600, 900);
+        assertTrue(l.getCellWidth() * 1000 <= 1600);
+        assertTrue(l.getCellHeight() * 2 <= 900);
+        assertTrue(l.getX(1, 0) >= 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noRows() {
+        new BoardLayout(new int[0], 100, 100);
+    }
+}
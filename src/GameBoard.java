@@ -2,23 +2,31 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 
 /**
  * The GameBoard class has a constructor that initializes a new Nim object and
  * status JLabel. A mouse listener listens for mouse releases, in which case it
  * calls the move method on the Nim object based on where it's clicked and
  * updates the status (with a later function) and reflects the visual change
- * in the array of MatchPanel objects that are visible/not based on the method
- * paintComponent (also a later function).
+ * in the matches drawn by the method paintComponent (also a later function).
  *
- * There are also reset, done, and undo methods that call corresponding methods
- * in Nim.java (only when it is not paused) and update the status text. Pause and
+ * There are also reset, done, undo, and redo methods that call corresponding methods
+ * in Nim.java (only when it is not paused) and update the status text. When the
+ * computer opponent is turned on, NimAI plays player 2's turns after done. Pause and
  * unpause are also methods here, they do not update any status. The updateStatus
  * method enacts those changes and also calls checkWinner on the Nim object that
  * displays a different status when the game is over.
  *
  * We override the paintComponent class to display the particular match if it is
- * present in the matches boolean array. We also override getPreferredSize.
+ * present in the packed board. We also override getPreferredSize.
+ * Matches aren't components: each is just an entry in a table of coordinates that
+ * BoardLayout computes for the current size of the board (BoardLayout also maps
+ * clicks back to matches), and all of them are drawn from one shared sprite (see
+ * MatchSprite). Instead of
+ * repainting the whole board after every change, repaintDirty asks Nim which
+ * matches changed and repaints only their rectangles, and paintComponent only
+ * draws the matches inside the clip.
  */
 public class GameBoard extends JPanel {
 
@@ -28,21 +36,40 @@ public class GameBoard extends JPanel {
     // Current status text
     private JLabel status;
 
+    // whether player 2 is played by NimAI
+    private boolean computer;
+
+    // whether clicks take matches (false when the board only shows a replay)
+    private boolean editable = true;
+
     // Game constants
     public static final int BOARD_WIDTH = 288;
     public static final int BOARD_HEIGHT = 400;
 
-    // Jagged array of matches, similar to that in Nim.java, but this one is for the images
-    private MatchPanel[][] matches;
+    // positions of the matches for the current size of the board
+    private BoardLayout layout;
+    // left and top edge of each match, indexed like the bits of the packed board (r * r + c)
+    private final int[] matchX = new int[Nim.ROWS * Nim.ROWS];
+    private final int[] matchY = new int[Nim.ROWS * Nim.ROWS];
 
     public GameBoard(JLabel initial) {
+        this(initial, new Nim());
+    }
+
+    /**
+     * Constructor showing a game made elsewhere, e.g. the journal-free one a
+     * ReplayViewer steps through
+     * @param initial status label
+     * @param model game to show
+     */
+    public GameBoard(JLabel initial, Nim model) {
 
         // Set border and keyboard/mouse focus
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
         setFocusable(true);
 
         // Initializes model for the game
-        n = new Nim();
+        n = model;
         // Initializes the status JLabel
         status = initial;
 
@@ -50,56 +77,37 @@ public class GameBoard extends JPanel {
         // board based off of the updated model. Only do if the game isn't paused
         addMouseListener(new MouseAdapter() {
             public void mouseReleased(MouseEvent e) {
-                if (!n.isPaused()) {
-                    Point p = e.getPoint();
-
-                    int row = p.y / 100;
-                    int colP = p.x;
-                    int col;
-
-                    // updates the model given the coordinates of the mouseclick
-                    if (row == 0 && colP > 128 && colP < 160) {
-                        col = 0;
-                        n.move(0, col);
-                    } else if (row == 1 && colP > 96 && colP < 192) {
-                        col = (colP - 96) / 32;
-                        n.move(1, col);
-                    } else if (row == 2 && colP > 64 && colP < 224) {
-                        col = (colP - 64) / 32;
-                        n.move(2, col);
-                    } else if (row == 3 && colP > 32 && colP < 256) {
-                        col = (colP - 32) / 32;
-                        n.move(3, col);
+                if (editable && !n.isPaused()) {
+                    // updates the model given the match under the mouseclick, if any
+                    long cell = currentLayout().hit(e.getX(), e.getY());
+                    if (cell != BoardLayout.NONE) {
+                        n.move(BoardLayout.row(cell), BoardLayout.col(cell));
                     }
 
                     updateStatus();
-                    repaint(); // repaints the game board
+                    repaintDirty(); // repaints the matches that changed
                 }
             }
         });
+    }
 
-        // create array and initialize the match images (MatchPanel objects) that will be in it
-        matches = new MatchPanel[4][];
-        for (int i = 0; i < matches.length; i++) {
-            matches[i] = new MatchPanel[2 * i + 1];
+    /**
+     * Gets the layout for the current size of the board, redoing it (and the table
+     * of match positions) if the size changed
+     */
+    private BoardLayout currentLayout() {
+        int w = getWidth() > 0 ? getWidth() : BOARD_WIDTH;
+        int h = getHeight() > 0 ? getHeight() : BOARD_HEIGHT;
+        if (layout == null || layout.getWidth() != w || layout.getHeight() != h) {
+            layout = BoardLayout.classic(w, h);
+            for (int i = 0; i < Nim.ROWS; i++) {
+                for (int j = 0; j <= 2 * i; j++) {
+                    matchX[i * i + j] = layout.getX(i, j);
+                    matchY[i * i + j] = layout.getY(i);
+                }
+            }
         }
-
-        matches[0][0] = new MatchPanel(128,0);
-        matches[1][0] = new MatchPanel(96,100);
-        matches[1][1] = new MatchPanel(128,100);
-        matches[1][2] = new MatchPanel(160,100);
-        matches[2][0] = new MatchPanel(64,200);
-        matches[2][1] = new MatchPanel(96,200);
-        matches[2][2] = new MatchPanel(128,200);
-        matches[2][3] = new MatchPanel(160,200);
-        matches[2][4] = new MatchPanel(192,200);
-        matches[3][0] = new MatchPanel(32,300);
-        matches[3][1] = new MatchPanel(64,300);
-        matches[3][2] = new MatchPanel(96,300);
-        matches[3][3] = new MatchPanel(128,300);
-        matches[3][4] = new MatchPanel(160,300);
-        matches[3][5] = new MatchPanel(192,300);
-        matches[3][6] = new MatchPanel(224,300);
+        return layout;
     }
 
     /**
@@ -113,7 +121,7 @@ public class GameBoard extends JPanel {
         n.resetBoard();
         n.resetFile();
         status.setText("player 1's turn");
-        repaint();
+        repaintDirty();
 
         // Ensure keyboard/mouse focus
         requestFocusInWindow();
@@ -129,8 +137,9 @@ public class GameBoard extends JPanel {
         }
         if (n.checkWinner() == 0) {
             n.turnDone();
+            computerTurn();
             updateStatus();
-            repaint();
+            repaintDirty();
         }
 
         requestFocusInWindow();
@@ -146,13 +155,62 @@ public class GameBoard extends JPanel {
         }
         if (n.checkWinner() == 0) {
             n.undo();
+            // against the computer, also take back its turn so it's player 1's turn again
+            if (computer && !n.getCurrentPlayer()) {
+                n.undo();
+            }
             updateStatus();
-            repaint();
+            repaintDirty();
         }
 
         requestFocusInWindow();
     }
 
+    /**
+     * Redoes the turn undone most recently, then sets the text to whoever's turn it is
+     */
+    public void redo() {
+        if (n.isPaused()) {
+            return;
+        }
+        if (n.checkWinner() == 0) {
+            n.redo();
+            // against the computer, its undone turn comes back too
+            if (computer && !n.getCurrentPlayer()) {
+                n.redo();
+            }
+            updateStatus();
+            repaintDirty();
+        }
+
+        requestFocusInWindow();
+    }
+
+    /**
+     * Turns the computer opponent on or off. If it is player 2's turn when it is
+     * turned on, the computer plays right away.
+     * @param on true if NimAI should play for player 2
+     */
+    public void setComputerOpponent(boolean on) {
+        computer = on;
+        if (!n.isPaused() && n.checkWinner() == 0) {
+            computerTurn();
+            updateStatus();
+            repaintDirty();
+        }
+
+        requestFocusInWindow();
+    }
+
+    /**
+     * Lets NimAI play player 2's turn if the computer opponent is on
+     */
+    private void computerTurn() {
+        if (computer && !n.getCurrentPlayer() && n.getStartOfTurn()) {
+            NimAI.playTurn(n);
+        }
+    }
+
     /**
      * Updates the JLabel to reflect the current state of the game.
      * There are different cases based on whether the game is over or not.
@@ -179,24 +237,66 @@ public class GameBoard extends JPanel {
         n.pause();
     }
 
-    // Similar to above, but calling the unpause method
+    // Similar to above, but calling the unpause method; the file may have changed the board
     public void unpause() {
         n.unpause();
+        repaintDirty();
+    }
+
+    /**
+     * Turns taking matches by clicking on or off
+     * @param on false to only show the game
+     */
+    public void setEditable(boolean on) {
+        editable = on;
     }
 
     /**
-     * Draws the game board based on the matches array
+     * Updates the status and the matches after the game was changed from outside
+     * the board
+     */
+    public void refresh() {
+        updateStatus();
+        repaintDirty();
+    }
+
+    /**
+     * Repaints the rectangles of the matches that changed since the last call,
+     * nothing at all if none did
+     */
+    private void repaintDirty() {
+        BoardLayout l = currentLayout();
+        for (int dirty = n.takeDirty(); dirty != 0; dirty &= dirty - 1) {
+            int i = Integer.numberOfTrailingZeros(dirty);
+            repaint(matchX[i], matchY[i], l.getCellWidth(), l.getCellHeight());
+        }
+    }
+
+    /**
+     * Draws the game board based on the packed board
      */
     @Override
     public void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        Object event = NimEvents.begin(NimEvents.PAINT);
         super.paintComponent(g);
 
-        for (int i = 0; i < matches.length; i++) {
-            for (int j = 0; j < matches[i].length; j++) {
-                if (n.getCell(i, j)) {
-                    matches[i][j].draw(g);
-                }
-            }
+        BoardLayout l = currentLayout();
+        BufferedImage sprite = MatchSprite.sprite(getGraphicsConfiguration(), l.getCellWidth(),
+                l.getCellHeight());
+        if (sprite == null) {
+            return;
+        }
+        // only the matches present and inside the area being repainted are drawn
+        for (int bits = n.getBits(); bits != 0; bits &= bits - 1) {
+            int i = Integer.numberOfTrailingZeros(bits);
+            MatchSprite.draw(g, sprite, matchX[i], matchY[i]);
+        }
+        NimMetrics.INSTANCE.painted(System.nanoTime() - start);
+        if (event != null) {
+            Rectangle clip = g.getClipBounds();
+            NimEvents.commitPaint(event, clip != null ? clip.width : getWidth(),
+                    clip != null ? clip.height : getHeight(), n.getNumLeft());
         }
     }
 
@@ -1,6 +1,9 @@
 import org.junit.Test;
 
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.LinkedList;
 
 import static org.junit.Assert.*;
@@ -93,6 +96,16 @@ public class GameTest {
         assertFalse(n.getCell(0, 0));
     }
 
+    @Test
+    public void cellOutsideBoard() {
+        Nim n = new Nim(false);
+        // (0, 1) would be bit 1, the first match of row 1
+        assertTrue(n.getCell(1, 0));
+        assertFalse(n.getCell(0, 1));
+        assertFalse(n.getCell(-1, 0));
+        assertFalse(n.getCell(Nim.ROWS, 0));
+    }
+
     @Test
     public void moveNumLeft() {
         Nim n = new Nim();
@@ -512,5 +525,337 @@ public class GameTest {
         assertEquals(3, n.getRowNow());
         assertFalse(n.getCurrentPlayer());
     }
-}
 
+    // tests for the packed board
+    @Test
+    public void packedBoardRowCounts() {
+        Nim n = new Nim();
+        assertEquals(Nim.FULL_BOARD, n.getBits());
+        n.move(3, 2);
+        n.move(3, 6);
+        assertEquals(5, n.getRowCount(3));
+        assertEquals(5, n.getRowCount(2));
+        assertEquals(14, n.getNumLeft());
+        assertFalse(n.getBoard()[3][2]);
+        assertTrue(n.getBoard()[3][3]);
+    }
+
+    @Test
+    public void packedBoardUndoRestoresBits() {
+        Nim n = new Nim();
+        n.move(2, 1);
+        n.move(2, 4);
+        n.undo();
+        assertEquals(Nim.FULL_BOARD, n.getBits());
+    }
+
+    // tests for journal-free games
+    @Test
+    public void journalFreePauseKeepsState() {
+        Nim n = new Nim(false);
+        assertFalse(n.isJournaled());
+        n.move(2, 0);
+        n.move(2, 1);
+        n.turnDone();
+        n.pause();
+        assertTrue(n.isPaused());
+        n.unpause();
+        assertFalse(n.isPaused());
+        assertEquals(14, n.getNumLeft());
+        assertFalse(n.getCurrentPlayer());
+    }
+
+    @Test
+    public void journalFreeGameToTheEnd() {
+        Nim n = new Nim(false);
+        while (n.checkWinner() == 0) {
+            NimAI.playTurn(n);
+        }
+        assertTrue(n.getGameOver());
+        assertEquals(1, n.getNumLeft());
+    }
+
+    // tests for the journal
+    @Test
+    public void pauseWaitsForJournal() throws IOException {
+        Nim n = new Nim();
+        n.move(1, 0);
+        n.turnDone();
+        n.move(3, 6);
+        n.undo();
+        n.pause();
+        String file = new String(Files.readAllBytes(Paths.get("./files/gameasfile.csv")));
+        assertEquals("start\nmove,1,1,0\ndone,1\nmove,2,3,6\nundo,2,3,6", file);
+    }
+
+    @Test
+    public void failedJournalIsNotRegistered() throws IOException {
+        String dir = Files.createTempDirectory("nim-journal").toString();
+        Journal good = new Journal(dir + "/game.csv", false);
+        good.append("start");
+        try {
+            // a directory can't be opened as the file
+            new Journal(dir, false);
+            fail("opened a directory as a journal");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(Journal.getTotalQueueDepth() >= 0);
+        good.sync();
+        good.close();
+        assertEquals("start", new String(Files.readAllBytes(Paths.get(dir, "game.csv"))));
+    }
+
+    @Test
+    public void unpauseFromBinaryJournal() throws IOException {
+        Nim n = new Nim();
+        n.move(3, 0);
+        n.move(3, 1);
+        n.turnDone();
+        n.move(2, 2);
+        n.pause();
+        BinaryJournal.csvToBinary("./files/gameasfile.csv", "./files/test.nimj");
+        Files.copy(Paths.get("./files/test.nimj"), Paths.get("./files/gameasfile.csv"),
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(Paths.get("./files/test.nimj"));
+        n.unpause();
+        assertEquals(13, n.getNumLeft());
+        assertFalse(n.getCell(2, 2));
+        assertEquals(2, n.getRowNow());
+        assertFalse(n.getCurrentPlayer());
+    }
+
+    // tests for checkpoints
+    @Test
+    public void unpauseRestoresCheckpoint() {
+        Nim n = new Nim();
+        n.move(1, 0);
+        n.turnDone();
+        n.move(3, 3);
+        n.pause();
+        // changes while paused aren't written, unpause goes back to the snapshot
+        n.move(3, 4);
+        n.unpause();
+        assertTrue(n.getCell(3, 4));
+        assertFalse(n.getCell(3, 3));
+        assertEquals(14, n.getNumLeft());
+        assertFalse(n.getStartOfTurn());
+        assertEquals(3, n.getRowNow());
+    }
+
+    @Test
+    public void unpauseReplaysChangedFile() throws IOException {
+        Nim n = new Nim();
+        n.move(1, 0);
+        n.turnDone();
+        n.pause();
+        // another writer adds a move, so the snapshot is stale and the file is replayed
+        Files.write(Paths.get(Nim.FILE), "\nmove,2,2,2".getBytes(),
+                java.nio.file.StandardOpenOption.APPEND);
+        n.unpause();
+        assertFalse(n.getCell(2, 2));
+        assertEquals(14, n.getNumLeft());
+        assertEquals(2, n.getRowNow());
+    }
+
+    @Test
+    public void checkpointAndRestore() {
+        Nim n = new Nim(false);
+        n.move(2, 0);
+        n.move(2, 1);
+        n.turnDone();
+        Nim.Checkpoint cp = n.checkpoint();
+        n.move(0, 0);
+        n.turnDone();
+        n.restore(cp);
+        assertTrue(n.getCell(0, 0));
+        assertFalse(n.getCurrentPlayer());
+        assertEquals(1, n.getMovesInTurns().size());
+        assertTrue(n.undo());
+        assertEquals(Nim.FULL_BOARD, n.getBits());
+    }
+
+    @Test
+    public void checkpointSeesAppendOrRewrite() throws IOException {
+        Nim n = new Nim();
+        n.move(1, 0);
+        n.turnDone();
+        n.pause();
+        Nim.Checkpoint cp = n.checkpoint();
+        assertEquals(Nim.Checkpoint.CURRENT, cp.check());
+        Files.write(Paths.get(Nim.FILE), "\nmove,2,2,2".getBytes(),
+                java.nio.file.StandardOpenOption.APPEND);
+        assertEquals(Nim.Checkpoint.APPENDED, cp.check());
+        Files.write(Paths.get(Nim.FILE), "start\nmove,1,1,1\ndone,1\nmove,2,2,2".getBytes());
+        assertEquals(Nim.Checkpoint.STALE, cp.check());
+        n.unpause();
+        assertFalse(n.getCell(1, 1));
+        assertTrue(n.getCell(1, 0));
+        assertFalse(n.getCell(2, 2));
+    }
+
+    @Test
+    public void journalReaderResumesAtOffset() throws IOException {
+        Files.write(Paths.get(Nim.FILE), "start\nmove,1,3,0\ndone,1\nmove,2,2,1".getBytes());
+        long offset;
+        try (JournalReader r = new JournalReader(Nim.FILE)) {
+            r.next();
+            offset = r.getPosition();
+            assertEquals("start\nmove,1,3,0".length(), offset);
+        }
+        try (JournalReader r = new JournalReader(Nim.FILE, offset)) {
+            assertEquals(BinaryJournal.done(true), r.next());
+            assertEquals(BinaryJournal.move(false, 2, 1), r.next());
+            assertEquals(BinaryJournal.NONE, r.next());
+        }
+    }
+
+    // tests for the move history
+    @Test
+    public void historyPacksTurns() {
+        Nim n = new Nim(false);
+        n.move(3, 5);
+        n.move(3, 2);
+        n.turnDone();
+        n.move(0, 0);
+        MoveHistory h = n.getHistory();
+        assertEquals(2, h.getTurns());
+        assertEquals(2, h.getTurnEnd(0) - h.getTurnStart(0));
+        assertEquals(1, h.getTurnEnd(1) - h.getTurnStart(1));
+        assertEquals(3, h.getRow(1));
+        assertEquals(2, h.getCol(1));
+        assertEquals(0, h.getRow(h.getTurnStart(1)));
+    }
+
+    @Test
+    public void historyRingEvictsOldestTurn() {
+        MoveHistory h = new MoveHistory(4, 7);
+        for (int i = 0; i < 100; i++) {
+            h.add(i % 4, i % 7, i % 3 == 0);
+        }
+        assertEquals(34, h.getTurns());
+        assertEquals(30, h.getFirst());
+        assertTrue(h.isFull());
+        assertEquals(4, h.toLists().size());
+        h.removeLastTurn();
+        assertTrue(h.canRedo());
+    }
+
+    @Test
+    public void historyUnboundedKeepsEverything() {
+        MoveHistory h = new MoveHistory(0, 7);
+        for (int i = 0; i < 100; i++) {
+            h.add(i % 4, i % 7, i % 3 == 0);
+        }
+        assertEquals(0, h.getFirst());
+        assertEquals(34, h.toLists().size());
+        assertEquals(3, h.getRow(h.getTurnStart(33)));
+    }
+
+    // tests for redo
+    @Test
+    public void redoFinishedTurn() {
+        Nim n = new Nim();
+        n.move(3, 0);
+        n.move(3, 1);
+        n.turnDone();
+        n.undo();
+        assertTrue(n.getCurrentPlayer());
+        assertTrue(n.redo());
+        assertFalse(n.getCell(3, 0));
+        assertFalse(n.getCell(3, 1));
+        assertFalse(n.getCurrentPlayer());
+        assertTrue(n.getStartOfTurn());
+        assertFalse(n.redo());
+    }
+
+    @Test
+    public void redoTurnInProgress() {
+        Nim n = new Nim();
+        n.move(2, 3);
+        n.undo();
+        assertTrue(n.redo());
+        assertFalse(n.getStartOfTurn());
+        assertEquals(2, n.getRowNow());
+        assertTrue(n.move(2, 4));
+        assertFalse(n.move(1, 0));
+    }
+
+    @Test
+    public void redoDroppedByNewMove() {
+        Nim n = new Nim();
+        n.move(2, 3);
+        n.turnDone();
+        n.undo();
+        n.move(1, 1);
+        assertFalse(n.getStartOfTurn());
+        n.turnDone();
+        assertFalse(n.redo());
+    }
+
+    @Test
+    public void redoReplaysFromFile() {
+        Nim n = new Nim();
+        n.move(3, 3);
+        n.turnDone();
+        n.move(0, 0);
+        n.turnDone();
+        n.undo();
+        n.undo();
+        n.redo();
+        n.pause();
+        n.replayJournal();
+        assertFalse(n.getCell(3, 3));
+        assertTrue(n.getCell(0, 0));
+        assertFalse(n.getCurrentPlayer());
+        assertTrue(n.redo());
+        assertFalse(n.getCell(0, 0));
+    }
+
+    @Test
+    public void undoStopsAtHistoryCapacity() {
+        Nim n = new Nim(false, 2, false);
+        for (int r = 1; r < Nim.ROWS; r++) {
+            n.move(r, 0);
+            n.turnDone();
+        }
+        assertTrue(n.undo());
+        assertTrue(n.undo());
+        assertFalse(n.undo());
+        assertFalse(n.getCell(1, 0));
+    }
+
+    @Test
+    public void undoReadsSpilledTurnsBack() {
+        Nim n = new Nim(true, 2, true);
+        for (int r = 1; r < Nim.ROWS; r++) {
+            n.move(r, 0);
+            n.turnDone();
+        }
+        assertTrue(n.undo());
+        assertTrue(n.undo());
+        assertTrue(n.undo());
+        assertEquals(Nim.FULL_BOARD, n.getBits());
+        assertTrue(n.getCurrentPlayer());
+        assertFalse(n.undo());
+    }
+
+    @Test
+    public void takeDirtyTracksChangedMatches() {
+        Nim n = new Nim(false);
+        assertEquals(0, n.takeDirty());
+        n.move(3, 0);
+        n.move(3, 1);
+        assertEquals(0x600, n.takeDirty());
+        assertEquals(0, n.takeDirty());
+        n.turnDone();
+        n.move(1, 0);
+        n.undo();
+        assertEquals(0, n.takeDirty());
+        n.undo();
+        assertEquals(0x600, n.takeDirty());
+        n.move(0, 0);
+        n.resetBoard();
+        assertEquals(0, n.takeDirty());
+    }
+}
@@ -0,0 +1,308 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The GrundyTable class holds the Grundy values (nimbers) of single heaps under a
+ * MoveRule. A position of several heaps is lost for the player to move, under
+ * normal play, exactly when the xor of the values of its heaps is 0, so with the
+ * table a variant is played as well as NimAI plays the classic rule.
+ *
+ * compute fills the table in blocks of heap sizes. The value of a heap depends on
+ * the values of every smaller heap, but the options of a heap in a block whose
+ * parts are all below the block are already known, so those (almost all of them
+ * for a large heap that can be split) are collected for every heap of the block
+ * at once on a fork-join pool. The few options with a part inside the block are
+ * then added heap by heap.
+ *
+ * Rules with a largest take (every finite octal code) have values that become
+ * periodic. After each block the table looks for a period p starting at n0 that
+ * holds up to the last value computed; once that run is long enough to prove the
+ * values repeat forever (t values for a rule that never splits, n0 + p + t for
+ * one that does, t the largest take) computing stops. get then answers
+ * for a heap of any size, so a table of a few hundred values covers heaps of
+ * 2^31 matches.
+ *
+ * The values are kept off the Java heap in a direct buffer of native-order ints,
+ * so large tables don't weigh on the garbage collector.
+ */
+public final class GrundyTable {
+
+    // heap sizes in a block, filled together
+    private static final int BLOCK = 1024;
+    // heap sizes one fork-join task collects options for without splitting further
+    private static final int TASK = 32;
+
+    private final MoveRule rule;
+    // values of heaps 0 to length - 1
+    private final ByteBuffer values;
+    private final int length;
+    // values repeat from preperiod on with this period, 0 if no period was found
+    private final int preperiod;
+    private final int period;
+
+    private GrundyTable(MoveRule rule, ByteBuffer values, int length, int preperiod, int period) {
+        this.rule = rule;
+        this.values = values;
+        this.length = length;
+        this.preperiod = preperiod;
+        this.period = period;
+    }
+
+    /**
+     * Creates a table over values computed before, e.g. mapped from a file by
+     * TableCache
+     * @param values native-order ints, heap h at byte 4 * h
+     */
+    static GrundyTable wrap(MoveRule rule, ByteBuffer values, int length, int preperiod, int period) {
+        return new GrundyTable(rule, values, length, preperiod, period);
+    }
+
+    /**
+     * Computes a table on the common fork-join pool
+     * @param rule rule to solve
+     * @param size number of heap sizes to compute at most (heaps 0 to size - 1)
+     * @return the table, shorter than size if a period was found
+     */
+    public static GrundyTable compute(MoveRule rule, int size) {
+        return compute(rule, size, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes a table
+     * @param rule rule to solve
+     * @param size number of heap sizes to compute at most (heaps 0 to size - 1)
+     * @param pool pool to collect options on
+     * @return the table, shorter than size if a period was found
+     */
+    public static GrundyTable compute(MoveRule rule, int size, ForkJoinPool pool) {
+        if (size < 1 || size > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("table size must be between 1 and 2^29 - 1");
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder());
+        // heap 0 has no options
+        buf.putInt(0, 0);
+        int n = 1;
+        while (n < size) {
+            int hi = Math.min(size, n + BLOCK);
+            BitSet[] options = new BitSet[hi - n];
+            pool.invoke(new Collect(rule, buf, n, n, hi, options));
+            for (int h = n; h < hi; h++) {
+                BitSet seen = options[h - n];
+                addInside(rule, buf, n, h, seen);
+                buf.putInt(h * 4, seen.nextClearBit(0));
+            }
+            n = hi;
+            int[] found = findPeriod(rule, buf, n);
+            if (found != null) {
+                return new GrundyTable(rule, buf, n, found[0], found[1]);
+            }
+        }
+        return new GrundyTable(rule, buf, n, 0, 0);
+    }
+
+    /**
+     * The Collect class gathers, for heaps [from, to) of the block starting at lo,
+     * the values of the options whose parts are all below lo.
+     */
+    private static final class Collect extends RecursiveAction {
+        // fork-join tasks are Serializable, but these are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final MoveRule rule;
+        private final ByteBuffer buf;
+        private final int lo;
+        private final int from;
+        private final int to;
+        private final BitSet[] options;
+
+        Collect(MoveRule rule, ByteBuffer buf, int lo, int from, int to, BitSet[] options) {
+            this.rule = rule;
+            this.buf = buf;
+            this.lo = lo;
+            this.from = from;
+            this.to = to;
+            this.options = options;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Collect(rule, buf, lo, from, mid, options),
+                        new Collect(rule, buf, lo, mid, to, options));
+                return;
+            }
+            for (int h = from; h < to; h++) {
+                options[h - lo] = addBelow(rule, buf, lo, h, new BitSet());
+            }
+        }
+    }
+
+    /**
+     * Helper function adding the values of the options of heap h whose parts are
+     * all below lo
+     */
+    private static BitSet addBelow(MoveRule rule, ByteBuffer buf, int lo, int h, BitSet seen) {
+        int max = maxTake(rule, h);
+        for (int k = 1; k <= max; k++) {
+            int d = rule.getDigit(k);
+            int r = h - k;
+            if ((d & MoveRule.TAKE_ALL) != 0 && r == 0) {
+                seen.set(0);
+            }
+            if ((d & MoveRule.TAKE_END) != 0 && r > 0 && r < lo) {
+                seen.set(get(buf, r));
+            }
+            if ((d & MoveRule.SPLIT) != 0) {
+                // parts a <= b, both below lo
+                for (int a = Math.max(1, r - lo + 1); a <= r / 2; a++) {
+                    seen.set(get(buf, a) ^ get(buf, r - a));
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * Helper function adding the values of the options of heap h with a part at
+     * or above lo, which are known once every heap below h is
+     */
+    private static void addInside(MoveRule rule, ByteBuffer buf, int lo, int h, BitSet seen) {
+        int max = maxTake(rule, h);
+        for (int k = 1; k <= max; k++) {
+            int d = rule.getDigit(k);
+            int r = h - k;
+            if ((d & MoveRule.TAKE_END) != 0 && r >= lo) {
+                seen.set(get(buf, r));
+            }
+            if ((d & MoveRule.SPLIT) != 0) {
+                // the larger part b = r - a is at least lo
+                for (int a = 1; a <= Math.min(r / 2, r - lo); a++) {
+                    seen.set(get(buf, a) ^ get(buf, r - a));
+                }
+            }
+        }
+    }
+
+    private static int maxTake(MoveRule rule, int h) {
+        int t = rule.getMaxTake();
+        return t == 0 ? h : Math.min(t, h);
+    }
+
+    private static int get(ByteBuffer buf, int h) {
+        return buf.getInt(h * 4);
+    }
+
+    /**
+     * Helper function looking for the shortest period of the first n values that
+     * is proven to go on forever
+     * @return {preperiod, period}, or null if there is none yet
+     */
+    private static int[] findPeriod(MoveRule rule, ByteBuffer buf, int n) {
+        int t = rule.getMaxTake();
+        if (t == 0) {
+            return null;
+        }
+        boolean splits = false;
+        for (int k = 1; k <= t; k++) {
+            splits |= (rule.getDigit(k) & MoveRule.SPLIT) != 0;
+        }
+        for (int p = 1; p + t <= n; p++) {
+            // walk back from the end while the values repeat with period p, heap 0
+            // (which has no options) is left out
+            int n0 = n - p;
+            while (n0 > 1 && get(buf, n0 - 1) == get(buf, n0 - 1 + p)) {
+                n0--;
+            }
+            // values n0 to n - 1 - p match the ones p later
+            int run = n - p - n0;
+            if (splits ? run >= n0 + p + t : run >= t) {
+                return new int[] {n0, p};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * gets the Grundy value of a heap
+     * @param heap number of matches in the heap
+     * @return its value
+     * @throws IllegalArgumentException if the heap is past the table and no period was found
+     */
+    public int get(long heap) {
+        if (heap < 0) {
+            throw new IllegalArgumentException("heap sizes can't be negative");
+        }
+        if (heap < length) {
+            return get(values, (int) heap);
+        }
+        if (period == 0) {
+            throw new IllegalArgumentException("heap " + heap + " is past the table");
+        }
+        return get(values, (int) (preperiod + (heap - preperiod) % period));
+    }
+
+    /**
+     * gets the Grundy value of a position, the xor of the values of its heaps
+     * @param heaps number of matches in each heap
+     * @return 0 if the player to move loses under normal play
+     */
+    public int get(long[] heaps) {
+        int x = 0;
+        for (long h : heaps) {
+            x ^= get(h);
+        }
+        return x;
+    }
+
+    /**
+     * gets the values, e.g. to write them to a file
+     * @return a read-only view of heaps 0 to getLength() - 1, as native-order ints
+     */
+    public ByteBuffer getValues() {
+        ByteBuffer b = values.asReadOnlyBuffer();
+        b.limit(length * 4);
+        return b.slice().order(ByteOrder.nativeOrder());
+    }
+
+    // the following are get methods for the fields of this class
+    public MoveRule getRule() {
+        return rule;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getPreperiod() {
+        return preperiod;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public boolean isPeriodic() {
+        return period != 0;
+    }
+
+    public static void main(String[] args) {
+        MoveRule rule = MoveRule.octal(args.length > 0 ? args[0] : "0.77");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 16;
+        long start = System.nanoTime();
+        GrundyTable g = compute(rule, size);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%s: %d values in %.3f s%n", rule, g.getLength(), nanos / 1e9);
+        if (g.isPeriodic()) {
+            System.out.println("period " + g.getPeriod() + " from heap " + g.getPreperiod());
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int h = 0; h < Math.min(g.getLength(), 64); h++) {
+            sb.append(g.get(h)).append(' ');
+        }
+        System.out.println(sb.toString().trim());
+    }
+}
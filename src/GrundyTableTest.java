@@ -0,0 +1,136 @@
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * The GrundyTableTest class tests MoveRule and the values and periods found by
+ * GrundyTable against a plain sequential computation.
+ */
+
+public class GrundyTableTest {
+
+    /**
+     * Helper function computing values one heap at a time, straight from the rule
+     */
+    private static int[] reference(MoveRule rule, int size) {
+        int[] g = new int[size];
+        for (int h = 1; h < size; h++) {
+            BitSet seen = new BitSet();
+            int max = rule.getMaxTake() == 0 ? h : Math.min(h, rule.getMaxTake());
+            for (int k = 1; k <= max; k++) {
+                int d = rule.getDigit(k);
+                int r = h - k;
+                if ((d & MoveRule.TAKE_ALL) != 0 && r == 0) {
+                    seen.set(0);
+                }
+                if ((d & MoveRule.TAKE_END) != 0 && r > 0) {
+                    seen.set(g[r]);
+                }
+                if ((d & MoveRule.SPLIT) != 0) {
+                    for (int a = 1; a <= r / 2; a++) {
+                        seen.set(g[a] ^ g[r - a]);
+                    }
+                }
+            }
+            g[h] = seen.nextClearBit(0);
+        }
+        return g;
+    }
+
+    @Test
+    public void parseRules() {
+        assertEquals("0.77", MoveRule.octal("0.77").toString());
+        assertEquals("0.07", MoveRule.octal(".07").toString());
+        assertEquals(MoveRule.octal("0.333"), MoveRule.atMost(3));
+        assertEquals(3, MoveRule.atMost(3).getMaxTake());
+        assertEquals(0, MoveRule.nim().getMaxTake());
+        assertEquals(5, MoveRule.subtraction(2, 5).getMaxTake());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsDigits() {
+        MoveRule.octal("0.78");
+    }
+
+    @Test
+    public void ruleLegality() {
+        MoveRule r = MoveRule.subtraction(2, 5);
+        assertFalse(r.isLegal(10, 1));
+        assertTrue(r.isLegal(10, 2));
+        assertTrue(r.isLegal(5, 5));
+        assertFalse(r.isLegal(4, 5));
+        // Dawson's Kayles: always two at a time, and a single match is stuck
+        MoveRule d = MoveRule.octal("0.07");
+        assertTrue(d.isLegal(2, 2));
+        assertTrue(d.isLegal(3, 2));
+        assertFalse(d.isLegal(3, 1));
+        assertFalse(d.isLegal(1, 1));
+    }
+
+    @Test
+    public void subtractionIsPeriodic() {
+        GrundyTable g = GrundyTable.compute(MoveRule.atMost(3), 100000);
+        assertTrue(g.isPeriodic());
+        assertEquals(4, g.getPeriod());
+        assertTrue(g.getLength() < 100000);
+        for (long h : new long[] {0, 1, 7, 12, 1L << 31, (1L << 40) + 3}) {
+            assertEquals(h % 4, g.get(h));
+        }
+    }
+
+    @Test
+    public void nimIsIdentity() {
+        GrundyTable g = GrundyTable.compute(MoveRule.nim(), 3000);
+        assertFalse(g.isPeriodic());
+        assertEquals(3000, g.getLength());
+        for (int h = 0; h < 3000; h++) {
+            assertEquals(h, g.get(h));
+        }
+        assertEquals(1 ^ 3 ^ 5 ^ 7, g.get(new long[] {1, 3, 5, 7}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pastTableWithoutPeriod() {
+        GrundyTable.compute(MoveRule.nim(), 10).get(10);
+    }
+
+    @Test
+    public void kaylesPeriod() {
+        GrundyTable g = GrundyTable.compute(MoveRule.octal("0.77"), 5000);
+        assertEquals(12, g.getPeriod());
+        assertEquals(71, g.getPreperiod());
+        int[] ref = reference(MoveRule.octal("0.77"), 2000);
+        for (int h = 0; h < ref.length; h++) {
+            assertEquals(ref[h], g.get(h));
+        }
+    }
+
+    @Test
+    public void matchesReferenceAcrossBlocks() {
+        // values past the period are looked up, the ones before it were computed in
+        // blocks on the pool
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String code : new String[] {"0.07", "0.137", "0.4", "0.6"}) {
+                MoveRule rule = MoveRule.octal(code);
+                GrundyTable g = GrundyTable.compute(rule, 3000, pool);
+                int[] ref = reference(rule, 3000);
+                for (int h = 0; h < ref.length; h++) {
+                    assertEquals(code + " heap " + h, ref[h], g.get(h));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void valuesAreOffHeap() {
+        GrundyTable g = GrundyTable.compute(MoveRule.octal("0.77"), 5000);
+        assertTrue(g.getValues().isDirect());
+        assertEquals(g.getLength() * 4, g.getValues().remaining());
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * The HeapNim class is a generalized model of the game for boards of any shape.
+ * Instead of one bit or boolean per match like in Nim, each row (heap) is kept as
+ * a single count, so memory only grows with the number of rows. A board of 1,000
+ * heaps with up to 2^31 matches each is just a long array.
+ *
+ * A move takes some number of matches from one heap and ends the turn, so it can
+ * be validated in O(1). The win rule is configurable: with misere play the player
+ * who takes the last match loses (the rule checkWinner in Nim implements), with
+ * normal play the player who takes the last match wins. So are the moves allowed:
+ * a MoveRule such as take at most k, or a subtraction set, decides which counts can
+ * be taken (the classic rule, any number from one heap, if none is given).
+ */
+public class HeapNim {
+
+    // number of matches left in each heap
+    private long[] heaps;
+    // heap sizes the game was created with, used by reset
+    private final long[] start;
+    // true if taking the last match loses, false if it wins
+    private final boolean misere;
+    // counts that can be taken from a heap
+    private final MoveRule rule;
+    // number of total matches left
+    private long numLeft;
+    // number of heaps with a legal move left, the game is over at 0
+    private int playable;
+    // true if currently on player 1, false if on player 2
+    private boolean player1;
+    // if a player has won
+    private boolean gameOver;
+
+    /**
+     * Constructor sets up game state from a heap vector.
+     * @param heaps starting number of matches in each heap (copied)
+     * @param misere true if the player taking the last match loses
+     */
+    public HeapNim(long[] heaps, boolean misere) {
+        this(heaps, misere, MoveRule.nim());
+    }
+
+    /**
+     * Constructor sets up game state from a heap vector and a rule variant.
+     * @param heaps starting number of matches in each heap (copied)
+     * @param misere true if the player taking the last match loses
+     * @param rule counts that can be taken from a heap
+     */
+    public HeapNim(long[] heaps, boolean misere, MoveRule rule) {
+        if (heaps.length == 0) {
+            throw new IllegalArgumentException("board needs at least one heap");
+        }
+        for (long h : heaps) {
+            if (h < 0) {
+                throw new IllegalArgumentException("heap sizes can't be negative");
+            }
+        }
+        this.start = heaps.clone();
+        this.misere = misere;
+        this.rule = rule;
+        reset();
+    }
+
+    /**
+     * Creates the classic 1, 3, 5, 7 board with the misere rule
+     * @return new HeapNim matching the layout of Nim
+     */
+    public static HeapNim classic() {
+        return new HeapNim(new long[] {1, 3, 5, 7}, true);
+    }
+
+    /**
+     * reset the game state to the heaps it was created with
+     */
+    public void reset() {
+        heaps = start.clone();
+        numLeft = 0;
+        playable = 0;
+        for (long h : heaps) {
+            numLeft += h;
+            if (isPlayable(h)) {
+                playable++;
+            }
+        }
+        gameOver = playable == 0;
+        // player 1 moves first, and if there is no move player 1 is the one left
+        // without one: a loss under normal play, a win under misere
+        player1 = !gameOver || misere;
+    }
+
+    /**
+     * Helper function determining if a heap has a legal move left, which under the
+     * classic rule is just whether it has matches. Under other rules a heap can be
+     * stuck (e.g. one match when at least two must be taken). A move only changes
+     * one heap, so only that heap is checked again, in O(maxTake).
+     */
+    private boolean isPlayable(long h) {
+        if (h == 0) {
+            return false;
+        }
+        if (rule.getMaxTake() == 0) {
+            return true;
+        }
+        for (long k = 1; k <= Math.min(h, rule.getMaxTake()); k++) {
+            if (rule.isLegal(h, k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper function determining if a move is legal
+     * @param row heap to take from
+     * @param count number of matches to take
+     * @return true if the game isn't over and the rule allows taking count from the heap
+     */
+    public boolean isLegal(int row, long count) {
+        return !gameOver && row >= 0 && row < heaps.length && rule.isLegal(heaps[row], count);
+    }
+
+    /**
+     * Takes matches from one heap, which is a whole turn. If the move is legal and
+     * the game doesn't end, the player is changed.
+     *
+     * @param row heap to take from
+     * @param count number of matches to take
+     * @return whether the move was successful
+     */
+    public boolean move(int row, long count) {
+        if (!isLegal(row, count)) {
+            return false;
+        }
+        heaps[row] -= count;
+        numLeft -= count;
+        // the heap had a move, so it is only left out if it has none now
+        if (!isPlayable(heaps[row])) {
+            playable--;
+        }
+        if (playable == 0) {
+            gameOver = true;
+            // under misere the mover made the last move, so the other player wins
+            if (misere) {
+                player1 = !player1;
+            }
+        } else {
+            player1 = !player1;
+        }
+        return true;
+    }
+
+    /**
+     * checkWinner checks whether the game has reached a win condition.
+     *
+     * @return 0 if nobody has won yet, 1 if player 1 has won, and 2 if player 2
+     */
+    public int checkWinner() {
+        if (!gameOver) {
+            return 0;
+        }
+        return player1 ? 1 : 2;
+    }
+
+    /**
+     * getNimSum xors all heap sizes together
+     * @return the nim-sum of the current position
+     */
+    public long getNimSum() {
+        long x = 0;
+        for (long h : heaps) {
+            x ^= h;
+        }
+        return x;
+    }
+
+    // the following are get methods for the fields of this class
+    public long getHeap(int row) {
+        return heaps[row];
+    }
+
+    public long[] getHeaps() {
+        return heaps.clone();
+    }
+
+    public int getNumRows() {
+        return heaps.length;
+    }
+
+    public long getNumLeft() {
+        return numLeft;
+    }
+
+    public boolean isMisere() {
+        return misere;
+    }
+
+    public MoveRule getRule() {
+        return rule;
+    }
+
+    public boolean getGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * getCurrentPlayer is a getter for the player whose turn it is in the game,
+     * or the winner once the game is over.
+     *
+     * @return true if it's Player 1's turn, false if it's Player 2's turn.
+     */
+    public boolean getCurrentPlayer() {
+        return player1;
+    }
+}
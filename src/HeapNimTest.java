@@ -0,0 +1,137 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The HeapNimTest class tests the generalized heap model in HeapNim.
+ */
+
+public class HeapNimTest {
+
+    @Test
+    public void classicLayout() {
+        HeapNim h = HeapNim.classic();
+        assertEquals(4, h.getNumRows());
+        assertEquals(16, h.getNumLeft());
+        assertEquals(0, h.getNimSum());
+        assertTrue(h.isMisere());
+    }
+
+    @Test
+    public void moveInvalid() {
+        HeapNim h = HeapNim.classic();
+        assertFalse(h.move(0, 2));
+        assertFalse(h.move(4, 1));
+        assertFalse(h.move(1, 0));
+        assertTrue(h.getCurrentPlayer());
+    }
+
+    @Test
+    public void moveChangesPlayer() {
+        HeapNim h = HeapNim.classic();
+        assertTrue(h.move(3, 7));
+        assertEquals(0, h.getHeap(3));
+        assertEquals(9, h.getNumLeft());
+        assertFalse(h.getCurrentPlayer());
+    }
+
+    @Test
+    public void hugeHeaps() {
+        long[] heaps = new long[1000];
+        for (int i = 0; i < heaps.length; i++) {
+            heaps[i] = 1L << 31;
+        }
+        HeapNim h = new HeapNim(heaps, false);
+        assertEquals(1000L << 31, h.getNumLeft());
+        assertTrue(h.move(999, 1L << 31));
+        assertEquals(0, h.getHeap(999));
+    }
+
+    @Test
+    public void misereLastMatchLoses() {
+        HeapNim h = new HeapNim(new long[] {1, 2}, true);
+        h.move(1, 2);
+        h.move(0, 1);
+        assertTrue(h.getGameOver());
+        assertEquals(1, h.checkWinner());
+    }
+
+    @Test
+    public void normalLastMatchWins() {
+        HeapNim h = new HeapNim(new long[] {1, 2}, false);
+        h.move(1, 2);
+        h.move(0, 1);
+        assertTrue(h.getGameOver());
+        assertEquals(2, h.checkWinner());
+        assertFalse(h.move(0, 1));
+    }
+
+    @Test
+    public void resetRestoresHeaps() {
+        HeapNim h = new HeapNim(new long[] {4, 9}, false);
+        h.move(1, 3);
+        h.reset();
+        assertEquals(9, h.getHeap(1));
+        assertEquals(13, h.getNumLeft());
+        assertTrue(h.getCurrentPlayer());
+    }
+
+    @Test
+    public void ruleLimitsMoves() {
+        HeapNim h = new HeapNim(new long[] {10}, false, MoveRule.atMost(3));
+        assertFalse(h.move(0, 4));
+        assertTrue(h.move(0, 3));
+        assertFalse(h.getCurrentPlayer());
+    }
+
+    @Test
+    public void stuckHeapEndsGame() {
+        // only 2 can be taken, so the single match left can't be and player 1 made the last move
+        HeapNim h = new HeapNim(new long[] {3}, false, MoveRule.subtraction(2));
+        assertTrue(h.move(0, 2));
+        assertTrue(h.getGameOver());
+        assertEquals(1, h.getNumLeft());
+        assertEquals(1, h.checkWinner());
+    }
+
+    @Test
+    public void gameEndsWhenLastHeapIsStuck() {
+        // heaps of 1 are stuck from the start under subtraction {2, 3}
+        HeapNim h = new HeapNim(new long[] {1, 4, 1, 5}, false, MoveRule.subtraction(2, 3));
+        assertTrue(h.move(1, 3));
+        assertFalse(h.getGameOver());
+        assertTrue(h.move(3, 2));
+        assertFalse(h.getGameOver());
+        assertTrue(h.move(3, 2));
+        // every heap has 1 match or none now
+        assertTrue(h.getGameOver());
+        assertEquals(4, h.getNumLeft());
+        h.reset();
+        assertFalse(h.getGameOver());
+        assertTrue(new HeapNim(new long[] {1, 0, 1}, false, MoveRule.subtraction(2)).getGameOver());
+    }
+
+    @Test
+    public void noMoveAtStart() {
+        // 0.07 can't take a whole heap of one, so player 1 has no move
+        HeapNim normal = new HeapNim(new long[] {1, 1}, false, MoveRule.octal("0.07"));
+        assertTrue(normal.getGameOver());
+        assertEquals(2, normal.checkWinner());
+        HeapNim misere = new HeapNim(new long[] {1, 1}, true, MoveRule.octal("0.07"));
+        assertTrue(misere.getGameOver());
+        assertEquals(1, misere.checkWinner());
+        normal.reset();
+        assertEquals(2, normal.checkWinner());
+    }
+
+    @Test
+    public void grundyPlayerWinsVariant() {
+        // heaps of 5 and 6 under take at most 3 are worth 1 ^ 2, so the first player wins
+        GrundyTable table = GrundyTable.compute(MoveRule.atMost(3), 100);
+        HeapNim h = new HeapNim(new long[] {5, 6}, false, MoveRule.atMost(3));
+        while (!h.getGameOver()) {
+            assertTrue(NimAI.playTurn(h, table));
+        }
+        assertEquals(1, h.checkWinner());
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The Journal class writes the records of a game (the move, done and undo lines of
+ * gameasfile.csv) on a background thread, so the caller never waits for the disk.
+ * Records go into a bounded queue; when it is full, append blocks until the writer
+ * catches up.
+ *
+ * The writer thread group-commits: after taking a record it keeps collecting until
+ * it has a full batch or the time window has passed, then writes the whole batch
+ * and flushes once. sync is a barrier that returns only after everything appended
+ * before it has been flushed (and forced to the device if the journal was opened
+ * with force), which is what pause waits on before the file is read back.
+ *
+ * The writer is not a thread of its own: it runs on a shared pool only while there
+ * is something to write, and once it has been idle for a moment it closes the file
+ * and gives its thread back. An idle journal costs no thread and no file handle,
+ * so a process can keep thousands of them open (see NimHost).
+ *
+ * Only one journal writes a file at a time: opening a journal closes (and so drains)
+ * any journal still open on the same path, just like a new game used to take over
+ * gameasfile.csv.
+ *
+ * Batch size, window and queue capacity default to the nim.journal.batch,
+ * nim.journal.windowMillis and nim.journal.capacity system properties.
+ */
+public class Journal {
+
+    public static final int DEFAULT_BATCH = Integer.getInteger("nim.journal.batch", 64);
+    public static final long DEFAULT_WINDOW_MILLIS = Long.getLong("nim.journal.windowMillis", 5);
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("nim.journal.capacity", 4096);
+    // how long a writer waits for more records before it closes the file and returns
+    public static final long IDLE_MILLIS = Long.getLong("nim.journal.idleMillis", 50);
+
+    // put in the queue by close, the writer stops once it reaches it
+    private static final Object STOP = new Object();
+    // journals that are open, by absolute path
+    private static final Map<String, Journal> OPEN = new ConcurrentHashMap<>();
+    // threads shared by the writers of every journal
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "nim-journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // records (Strings) and barriers (CountDownLatches) waiting for the writer
+    private final BlockingQueue<Object> queue;
+    private final String path;
+    private final int batchSize;
+    private final long windowNanos;
+    private final boolean force;
+    private final String key;
+    // whether a writer is running (or about to), so at most one runs at a time
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // released once the writer has reached STOP and closed the file
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    // file being written, only open while a writer is running (writer only)
+    private FileOutputStream file;
+    private Writer out;
+    // set once close has been called, later appends are dropped
+    private volatile boolean closed;
+
+    /**
+     * Opens a journal with the default batch size, window and capacity
+     * @param path file to write to
+     * @param append true to add to the end of the file, false to overwrite it
+     * @throws IOException if the file can't be opened
+     */
+    public Journal(String path, boolean append) throws IOException {
+        this(path, append, DEFAULT_CAPACITY, DEFAULT_BATCH, DEFAULT_WINDOW_MILLIS, false);
+    }
+
+    /**
+     * Opens a journal
+     * @param path file to write to
+     * @param append true to add to the end of the file, false to overwrite it
+     * @param capacity number of records that can wait in the queue
+     * @param batchSize largest number of records written per flush
+     * @param windowMillis how long the writer waits for a batch to fill up
+     * @param force true if sync should also force the file to the storage device
+     * @throws IOException if the file can't be opened
+     */
+    public Journal(String path, boolean append, int capacity, int batchSize, long windowMillis,
+                   boolean force) throws IOException {
+        this.key = new File(path).getAbsolutePath();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.path = path;
+        this.batchSize = Math.max(1, batchSize);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.force = force;
+        // drain the journal writing the file before it is truncated
+        Journal previous = OPEN.get(key);
+        if (previous != null) {
+            previous.close();
+        }
+        // truncate now if asked to, the writer always opens the file in append mode so
+        // records other processes add aren't overwritten. If this throws, the journal
+        // was never registered.
+        new FileOutputStream(path, append).close();
+        // registered last, so getTotalQueueDepth only ever sees whole journals
+        previous = OPEN.put(key, this);
+        if (previous != null) {
+            // one opened on the same path in the meantime
+            previous.close();
+        }
+    }
+
+    /**
+     * Adds a record to the queue, blocking if the queue is full
+     * @param record text to write, exactly as it should appear in the file
+     */
+    public void append(String record) {
+        try {
+            // re-check closed while waiting so a full queue can't block after the writer stopped
+            while (!closed && !queue.offer(record, 10, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            schedule();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Durability barrier: waits until every record appended before this call has
+     * been written and flushed
+     */
+    public synchronized void sync() {
+        if (closed) {
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            queue.put(done);
+            schedule();
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes everything still queued, then stops the writer and closes the file.
+     * Calling close more than once does nothing.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        OPEN.remove(key, this);
+        try {
+            queue.put(STOP);
+            schedule();
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * gets the number of records and barriers waiting for the writer
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * gets the number of records and barriers waiting in every open journal
+     */
+    public static int getTotalQueueDepth() {
+        int depth = 0;
+        for (Journal j : OPEN.values()) {
+            depth += j.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Starts a writer on the shared pool unless one is already running
+     */
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            WRITERS.execute(this::writeLoop);
+        }
+    }
+
+    /**
+     * Body of the writer: collect a batch, write it, flush, release barriers, until
+     * STOP is reached or nothing has come in for IDLE_MILLIS
+     */
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                Object first = queue.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // idle: give the thread back, unless a record came in meanwhile
+                    closeFile();
+                    scheduled.set(false);
+                    if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+            } catch (InterruptedException e) {
+                stop = true;
+            }
+            long start = System.nanoTime();
+            Object event = NimEvents.begin(NimEvents.JOURNAL_FLUSH);
+            boolean barrier = false;
+            for (Object o : batch) {
+                if (o instanceof String) {
+                    try {
+                        open().write((String) o);
+                    } catch (IOException e) {
+                    }
+                } else if (o == STOP) {
+                    stop = true;
+                } else {
+                    barrier = true;
+                }
+            }
+            try {
+                if (out != null) {
+                    out.flush();
+                    if (force && barrier) {
+                        file.getFD().sync();
+                    }
+                }
+            } catch (IOException e) {
+            }
+            NimMetrics.INSTANCE.journalFlushed(System.nanoTime() - start);
+            NimEvents.commitJournalFlush(event, path, batch.size(), force && barrier);
+            for (Object o : batch) {
+                if (o instanceof CountDownLatch) {
+                    ((CountDownLatch) o).countDown();
+                }
+            }
+            batch.clear();
+        }
+        closeFile();
+        stopped.countDown();
+    }
+
+    /**
+     * Opens the file for the writer if it isn't open yet
+     * @return writer appending to the file
+     * @throws IOException if the file can't be opened
+     */
+    private Writer open() throws IOException {
+        if (out == null) {
+            file = new FileOutputStream(path, true);
+            out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    /**
+     * Closes the file if the writer has it open
+     */
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+            }
+            out = null;
+            file = null;
+        }
+    }
+
+    /**
+     * Keeps adding records to a batch until it is full, the window has passed,
+     * or a barrier or STOP is reached (those should not wait)
+     * @param batch batch holding at least one element
+     * @throws InterruptedException if the writer is interrupted while waiting
+     */
+    private void fill(List<Object> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < batchSize && batch.get(batch.size() - 1) instanceof String) {
+            long wait = deadline - System.nanoTime();
+            Object o = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+            if (o == null) {
+                return;
+            }
+            batch.add(o);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The JournalCompactor class rewrites a journal to the shortest sequence of
+ * records that replays to the same game: the moves of every turn still in play,
+ * each followed by its done. Turns that were undone, the undo and redo records,
+ * and whatever else replay would first do and then reverse are folded away. Since
+ * the board only has 16 matches, a compacted journal is never more than a few
+ * dozen records, however long the session behind it was.
+ *
+ * compact is the offline tool: the journal is streamed through a game without a
+ * history limit, and the result is written in the journal's own format (csv or
+ * binary) next to it and then moved over it. The original can be kept by moving
+ * it to an archive file first. Nim.compact does the same online at a turn
+ * boundary, straight from its history when that reaches back to the first turn.
+ *
+ * Turns that could still be redone are dropped, so Nim only compacts online when
+ * there is nothing to redo.
+ *
+ * Run from the command line as: JournalCompactor [journal] [archive]
+ */
+public final class JournalCompactor {
+
+    private JournalCompactor() {
+    }
+
+    /**
+     * Compacts a journal file in place
+     * @param journal journal file (csv or binary)
+     * @param archive file to move the original to, or null to drop it
+     * @return length of the compacted journal
+     * @throws IOException if the journal can't be read or rewritten
+     */
+    public static long compact(String journal, String archive) throws IOException {
+        Nim full = Nim.uninstrumented();
+        boolean binary;
+        try (JournalReader r = new JournalReader(journal)) {
+            binary = r.isBinary();
+            while (true) {
+                int record;
+                try {
+                    record = r.next();
+                } catch (IllegalArgumentException e) {
+                    // lines that aren't records are skipped, as unpause does
+                    continue;
+                }
+                if (record == BinaryJournal.NONE) {
+                    break;
+                }
+                full.apply(record);
+            }
+        }
+        String tmp = journal + ".compact";
+        write(full.getHistory(), tmp, binary);
+        replace(journal, tmp, archive);
+        return new File(journal).length();
+    }
+
+    /**
+     * Writes the turns of a history as a new journal
+     * @param h history whose turns go back to the start of the game
+     * @param path file to write
+     * @param binary true for the binary format, false for csv
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if turns have been evicted from the history
+     */
+    public static void write(MoveHistory h, String path, boolean binary) throws IOException {
+        if (h.getFirst() != 0) {
+            throw new IllegalArgumentException("history doesn't go back to the first turn");
+        }
+        int[] records = records(h);
+        if (binary) {
+            try (BinaryJournal.Writer w = new BinaryJournal.Writer(
+                    new BufferedOutputStream(new FileOutputStream(path)))) {
+                for (int record : records) {
+                    w.write(record);
+                }
+            }
+        } else {
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(path), StandardCharsets.UTF_8))) {
+                w.write("start");
+                for (int record : records) {
+                    w.write("\n" + BinaryJournal.toCsv(record));
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper function listing the records that replay the turns of a history:
+     * each turn's moves, then done if the turn was ended
+     */
+    private static int[] records(MoveHistory h) {
+        int n = 0;
+        for (int t = h.getFirst(); t < h.getTurns(); t++) {
+            n += h.getTurnEnd(t) - h.getTurnStart(t) + (h.isDone(t) ? 1 : 0);
+        }
+        int[] records = new int[n];
+        int k = 0;
+        for (int t = h.getFirst(); t < h.getTurns(); t++) {
+            // player 1 plays the even turns
+            boolean player1 = t % 2 == 0;
+            for (int i = h.getTurnStart(t); i < h.getTurnEnd(t); i++) {
+                records[k++] = BinaryJournal.move(player1, h.getRow(i), h.getCol(i));
+            }
+            if (h.isDone(t)) {
+                records[k++] = BinaryJournal.done(player1);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Moves a rewritten journal over the original, moving the original to an
+     * archive file first if asked to
+     * @param journal journal file
+     * @param rewritten new contents of the journal, moved away by this call
+     * @param archive file to move the original to, or null to drop it
+     * @throws IOException if a file can't be moved
+     */
+    public static void replace(String journal, String rewritten, String archive) throws IOException {
+        if (archive != null) {
+            Files.move(Paths.get(journal), Paths.get(archive), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(Paths.get(rewritten), Paths.get(journal), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String journal = args.length > 0 ? args[0] : Nim.FILE;
+        String archive = args.length > 1 ? args[1] : null;
+        long before = new File(journal).length();
+        long after = compact(journal, archive);
+        System.out.println(journal + ": " + before + " -> " + after + " bytes"
+                + (archive != null ? ", original kept as " + archive : ""));
+    }
+}
@@ -0,0 +1,110 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+/**
+ * The JournalCompactorTest class tests folding undone turns out of journals, offline
+ * with JournalCompactor and online with Nim.compact.
+ */
+
+public class JournalCompactorTest {
+
+    private static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(path)));
+    }
+
+    /**
+     * Replays a journal into a journal-free game
+     */
+    private static Nim replay(String path) throws IOException {
+        Nim n = new Nim(false);
+        try (JournalReader r = new JournalReader(path)) {
+            for (int record = r.next(); record != BinaryJournal.NONE; record = r.next()) {
+                n.apply(record);
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void compactCsvKeepingOriginal() throws IOException {
+        String path = File.createTempFile("compact", ".csv").getPath();
+        String log = "start\nmove,1,3,0\nmove,1,3,1\ndone,1\nmove,2,2,0\nundo,2,2,0"
+                + "\nundo,1,3,0,1\nredo,1\nmove,2,1,0\ndone,2\nmove,1,2,4\nundo,1,2,4\nmove,1,0,0";
+        Files.write(Paths.get(path), log.getBytes());
+        Nim before = replay(path);
+        JournalCompactor.compact(path, path + ".orig");
+        assertEquals(log, read(path + ".orig"));
+        assertEquals("start\nmove,1,3,0\nmove,1,3,1\ndone,1\nmove,2,1,0\ndone,2\nmove,1,0,0", read(path));
+        Nim after = replay(path);
+        assertEquals(before.getBits(), after.getBits());
+        assertEquals(before.getCurrentPlayer(), after.getCurrentPlayer());
+        assertEquals(before.getStartOfTurn(), after.getStartOfTurn());
+        assertEquals(before.getHistory().getTurns(), after.getHistory().getTurns());
+        new File(path).delete();
+        new File(path + ".orig").delete();
+    }
+
+    @Test
+    public void compactBinary() throws IOException {
+        String path = File.createTempFile("compact", ".csv").getPath();
+        String bin = path + ".nimj";
+        Files.write(Paths.get(path), ("start\nmove,1,3,0\ndone,1\nmove,2,2,0\nundo,2,2,0"
+                + "\nmove,2,2,1\ndone,2\nundo,1,2,1\nundo,2,3,0").getBytes());
+        BinaryJournal.csvToBinary(path, bin);
+        JournalCompactor.compact(bin, null);
+        try (JournalReader r = new JournalReader(bin)) {
+            assertTrue(r.isBinary());
+            assertEquals(BinaryJournal.NONE, r.next());
+        }
+        new File(path).delete();
+        new File(bin).delete();
+    }
+
+    @Test
+    public void compactOnline() throws IOException {
+        String path = File.createTempFile("compact", ".csv").getPath();
+        Nim n = new Nim(path);
+        n.move(3, 0);
+        n.turnDone();
+        n.move(2, 0);
+        n.move(2, 1);
+        n.undo();
+        n.move(1, 0);
+        n.turnDone();
+        n.undo();
+        assertFalse(n.compact(null));
+        n.move(0, 0);
+        n.turnDone();
+        assertTrue(n.compact(path + ".orig"));
+        assertTrue(read(path + ".orig").contains("undo"));
+        n.move(3, 6);
+        n.close();
+        assertEquals("start\nmove,1,3,0\ndone,1\nmove,2,0,0\ndone,2\nmove,1,3,6", read(path));
+        assertEquals(n.getBits(), replay(path).getBits());
+        new File(path).delete();
+        new File(path + ".orig").delete();
+    }
+
+    @Test
+    public void compactAfterThreshold() throws IOException {
+        String path = File.createTempFile("compact", ".csv").getPath();
+        Nim n = new Nim(path);
+        n.setCompactAfter(10);
+        for (int i = 0; i < 5; i++) {
+            n.move(3, 0);
+            n.move(3, 1);
+            n.undo();
+        }
+        n.move(3, 2);
+        n.turnDone();
+        n.close();
+        assertEquals("start\nmove,1,3,2\ndone,1", read(path));
+        new File(path).delete();
+    }
+}
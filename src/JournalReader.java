@@ -0,0 +1,162 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The JournalReader class reads the records of a journal file through a NIO
+ * FileChannel, whatever its format: csv lines as Nim writes them or a BinaryJournal
+ * (told apart by the header). It can start at any byte offset that falls just after
+ * a record, which is how unpause only replays what was appended after its checkpoint.
+ *
+ * Csv lines are parsed straight from the read buffer, so no String is made per
+ * line. getPosition gives the offset just after the last record returned, to be
+ * saved and handed back to a later reader.
+ */
+public class JournalReader implements Closeable {
+
+    // size of the read buffer for csv files
+    private static final int BUFFER = 1 << 16;
+
+    private final FileChannel channel;
+    private final boolean binary;
+    // reader for binary files, null for csv
+    private final BinaryJournal.Reader bin;
+    // buffer of csv bytes from the channel and the file offset of its first byte
+    private ByteBuffer buf;
+    private long bufStart;
+    // offset just after the last csv record returned
+    private long position;
+
+    /**
+     * Opens a journal to read from the start
+     * @param path file to read
+     * @throws IOException if the file can't be opened or its header is bad
+     */
+    public JournalReader(String path) throws IOException {
+        this(path, -1);
+    }
+
+    /**
+     * Opens a journal to read from a byte offset
+     * @param path file to read
+     * @param offset offset just after some record, as given by getPosition, or -1 for the start
+     * @throws IOException if the file can't be opened or its header is bad
+     */
+    public JournalReader(String path, long offset) throws IOException {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        // the first bytes tell the format
+        ByteBuffer head = ByteBuffer.allocate(BinaryJournal.MAGIC.length);
+        while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+            continue;
+        }
+        head.flip();
+        binary = head.equals(ByteBuffer.wrap(BinaryJournal.MAGIC));
+        long start = Math.max(offset, 0);
+        channel.position(start);
+        if (binary) {
+            BufferedInputStream in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER);
+            bin = offset < 0 ? new BinaryJournal.Reader(in) : new BinaryJournal.Reader(in, offset);
+        } else {
+            bin = null;
+            buf = ByteBuffer.allocate(BUFFER);
+            buf.flip();
+            bufStart = start;
+            position = start;
+        }
+    }
+
+    /**
+     * Reads the next record
+     * @return the record, or BinaryJournal.NONE at the end of the file
+     * @throws IOException if the file can't be read or a binary checksum doesn't match
+     * @throws IllegalArgumentException if a csv line isn't a record (the line is skipped)
+     */
+    public int next() throws IOException {
+        if (binary) {
+            return bin.next();
+        }
+        while (true) {
+            int end = indexOfNewline(buf.position());
+            if (end < 0) {
+                // no full line in the buffer: keep the partial line and read more
+                if (fill()) {
+                    continue;
+                }
+                // end of file, whatever is left is the last line
+                if (!buf.hasRemaining()) {
+                    return BinaryJournal.NONE;
+                }
+                end = buf.limit();
+            }
+            int from = buf.position();
+            buf.position(end < buf.limit() ? end + 1 : end);
+            int record = BinaryJournal.parseCsv(buf.array(), from, end);
+            if (record != BinaryJournal.NONE) {
+                position = bufStart + end;
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Helper function finding the next newline in the buffer
+     * @param from index to start looking at
+     * @return index of the newline, or -1 if there is none before the limit
+     */
+    private int indexOfNewline(int from) {
+        byte[] b = buf.array();
+        for (int i = from; i < buf.limit(); i++) {
+            if (b[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves unread bytes to the front of the buffer (growing it for very long lines)
+     * and reads more from the channel
+     * @return false if the channel had nothing more
+     * @throws IOException if the file can't be read
+     */
+    private boolean fill() throws IOException {
+        bufStart += buf.position();
+        if (buf.position() == 0 && buf.limit() == buf.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+            bigger.put(buf);
+            buf = bigger;
+        } else {
+            buf.compact();
+        }
+        int n = channel.read(buf);
+        buf.flip();
+        return n > 0;
+    }
+
+    /**
+     * gets whether the file is a binary journal
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * gets the byte offset just after the last record returned by next
+     */
+    public long getPosition() {
+        return binary ? bin.getPosition() : position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (bin != null) {
+            bin.close();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class counts durations in buckets laid out the way an HDR
+ * histogram does: exact below 128 ns, and above that 128 buckets per power of two,
+ * so any value is kept within 1% of what was recorded from nanoseconds up to about
+ * 18 minutes (longer ones are counted in the last bucket). Recording is an index
+ * computation and a few atomic adds on preallocated arrays, so it never allocates
+ * and can be called from any thread.
+ *
+ * Reading (getPercentile and so on) walks the buckets while they may still be
+ * recorded into, so it is approximate while recording goes on, which is fine for
+ * metrics.
+ */
+public class LatencyHistogram {
+
+    // bits of precision within a power of two, 2^7 = 128 buckets each
+    private static final int SUB_BITS = 7;
+    private static final int SUB = 1 << SUB_BITS;
+    // highest power of two tracked, 2^40 ns is about 18 minutes
+    private static final int MAX_EXP = 40;
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration
+     * @param nanos duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Helper function finding the bucket of a value
+     */
+    static int index(long v) {
+        if (v < SUB) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXP) {
+            return BUCKETS - 1;
+        }
+        // the SUB_BITS bits below the top one pick the bucket within the power of two
+        int mantissa = (int) (v >>> (exp - SUB_BITS)) - SUB;
+        return (exp - SUB_BITS + 1) * SUB + mantissa;
+    }
+
+    /**
+     * Helper function giving the largest value that falls in a bucket
+     */
+    static long highest(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int exp = index / SUB + SUB_BITS - 1;
+        long mantissa = index % SUB + SUB;
+        return ((mantissa + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * gets a percentile of the recorded durations
+     * @param percent 0 to 100
+     * @return the duration in nanoseconds (within 1%), 0 if nothing was recorded
+     */
+    public long getPercentile(double percent) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highest(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears every bucket and total
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    // the following are get methods for the totals
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+}
@@ -0,0 +1,79 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The MatchSprite class draws matches as a flyweight: every match on the board
+ * shares one image, and a match itself is nothing but a position in the caller's
+ * coordinate table. match.png is read once and scaled once per cell size and
+ * screen configuration, in that screen's pixel format, so drawing a match is a
+ * plain image copy and a board of hundreds of matches costs no more objects than
+ * a board of one.
+ */
+public final class MatchSprite {
+
+    public static final String IMG = "files/match.png";
+    // size a match is drawn at on the classic board, which sets the proportions of every cell
+    public static final int WIDTH = 32;
+    public static final int HEIGHT = 100;
+
+    // match.png as read, null until first needed or if it can't be read
+    private static BufferedImage img;
+    private static boolean loaded;
+    // img scaled to the last size asked for, in the pixel format of the screen it was made for
+    private static BufferedImage sprite;
+    private static GraphicsConfiguration spriteConfig;
+
+    private MatchSprite() {
+    }
+
+    /**
+     * Gets the match image already scaled to a cell size, made once per size and
+     * screen configuration
+     * @param gc configuration of the screen drawn to, or null (headless) for ARGB
+     * @param width width of a cell
+     * @param height height of a cell
+     * @return the cached sprite, or null if the image couldn't be read
+     */
+    public static synchronized BufferedImage sprite(GraphicsConfiguration gc, int width, int height) {
+        if (!loaded) {
+            loaded = true;
+            try {
+                img = ImageIO.read(new File(IMG));
+            } catch (IOException e) {
+                System.out.println("Internal Error:" + e.getMessage());
+            }
+        }
+        if (img == null) {
+            return null;
+        }
+        if (sprite == null || spriteConfig != gc || sprite.getWidth() != width
+                || sprite.getHeight() != height) {
+            BufferedImage s = gc != null
+                    ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = s.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(img, 0, 0, width, height, null);
+            g.dispose();
+            sprite = s;
+            spriteConfig = gc;
+        }
+        return sprite;
+    }
+
+    /**
+     * Draws a match if any of it is inside the area being painted
+     * @param g graphics context
+     * @param sprite sprite from sprite(gc, width, height), fetched once per paint
+     * @param x left edge of the match
+     * @param y top edge of the match
+     */
+    public static void draw(Graphics g, BufferedImage sprite, int x, int y) {
+        if (g.hitClip(x, y, sprite.getWidth(), sprite.getHeight())) {
+            g.drawImage(sprite, x, y, null);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import java.awt.*;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedList;
+
+/**
+ * The MoveHistory class stores the matches taken in a game, grouped into turns,
+ * without allocating per move. It is a ring buffer of a fixed number of turns: each
+ * turn gets a slot of stride moves in a short array (packed as row << 8 | col), and
+ * small arrays hold the number of moves in each slot and whether the turn was ended
+ * with done. When a new turn doesn't fit, the oldest turn is evicted, so memory
+ * stays capped however long the game runs. A capacity of 0 makes the ring grow
+ * instead, for tools that need the whole history.
+ *
+ * Turns are numbered from the start of the game (getTurns keeps counting past
+ * evicted turns, so it still tells whose turn it is). Turns [getFirst, getTurns)
+ * can be undone; undone turns stay in their slots until a new turn overwrites them,
+ * so they can be redone.
+ *
+ * toLists builds the old LinkedList<LinkedList<Point>> form on demand for callers
+ * (and tests) that still want it.
+ */
+public class MoveHistory {
+
+    // packed moves, row << 8 | col, stride per turn
+    private short[] moves;
+    // number of moves in each slot
+    private byte[] sizes;
+    // whether the turn in each slot was ended with done
+    private boolean[] done;
+    private final int stride;
+    private final boolean bounded;
+    // oldest turn kept, number of turns played, and end of the turns that can be redone
+    private int first;
+    private int turns;
+    private int redoTop;
+
+    /**
+     * Creates an empty history
+     * @param capacity number of turns kept (undone ones included), or 0 for no limit
+     * @param stride largest number of moves in one turn
+     */
+    public MoveHistory(int capacity, int stride) {
+        this.bounded = capacity > 0;
+        this.stride = stride;
+        allocate(bounded ? capacity : 16);
+    }
+
+    private void allocate(int slots) {
+        moves = new short[slots * stride];
+        sizes = new byte[slots];
+        done = new boolean[slots];
+    }
+
+    /**
+     * gets the slot of a turn
+     */
+    private int slot(int t) {
+        return t % sizes.length;
+    }
+
+    /**
+     * Adds a move, either to the last turn or as the first move of a new one. A new
+     * turn drops any undone turns, and evicts the oldest turn if the ring is full.
+     * @param r row of the match taken
+     * @param c column of the match taken
+     * @param newTurn true if the move starts a new turn
+     */
+    public void add(int r, int c, boolean newTurn) {
+        if (newTurn) {
+            redoTop = turns;
+            if (isFull()) {
+                if (bounded) {
+                    first++;
+                } else {
+                    grow();
+                }
+            }
+            sizes[slot(turns)] = 0;
+            done[slot(turns)] = false;
+            turns++;
+            redoTop = turns;
+        }
+        int s = slot(turns - 1);
+        moves[s * stride + sizes[s]++] = (short) (r << 8 | c);
+    }
+
+    /**
+     * Doubles the number of slots, keeping every turn (unbounded histories only)
+     */
+    private void grow() {
+        short[] oldMoves = moves;
+        byte[] oldSizes = sizes;
+        boolean[] oldDone = done;
+        allocate(sizes.length * 2);
+        for (int t = first; t < redoTop; t++) {
+            int from = t % oldSizes.length;
+            System.arraycopy(oldMoves, from * stride, moves, slot(t) * stride, stride);
+            sizes[slot(t)] = oldSizes[from];
+            done[slot(t)] = oldDone[from];
+        }
+    }
+
+    /**
+     * Marks the last turn as ended with done
+     */
+    public void markDone() {
+        done[slot(turns - 1)] = true;
+    }
+
+    /**
+     * Takes back the last turn; it stays available to redo
+     */
+    public void removeLastTurn() {
+        turns--;
+    }
+
+    /**
+     * Puts back the turn undone most recently
+     */
+    public void redoTurn() {
+        turns++;
+    }
+
+    public void clear() {
+        first = 0;
+        turns = 0;
+        redoTop = 0;
+    }
+
+    // the following are get methods for the history
+    public int getFirst() {
+        return first;
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+
+    public int getCapacity() {
+        return bounded ? sizes.length : 0;
+    }
+
+    public boolean isEmpty() {
+        return turns == first;
+    }
+
+    public boolean isFull() {
+        return turns - first == sizes.length;
+    }
+
+    public boolean canRedo() {
+        return redoTop > turns;
+    }
+
+    /**
+     * gets the index of the first move of a turn
+     * @param t turn, getFirst() to getTurns() (getTurns() is the turn to redo)
+     */
+    public int getTurnStart(int t) {
+        return slot(t) * stride;
+    }
+
+    /**
+     * gets the index just past the last move of a turn
+     * @param t turn, getFirst() to getTurns() (getTurns() is the turn to redo)
+     */
+    public int getTurnEnd(int t) {
+        return slot(t) * stride + sizes[slot(t)];
+    }
+
+    /**
+     * gets whether a turn was ended with done
+     * @param t turn, getFirst() to getTurns() (getTurns() is the turn to redo)
+     */
+    public boolean isDone(int t) {
+        return done[slot(t)];
+    }
+
+    public int getRow(int i) {
+        return moves[i] >> 8;
+    }
+
+    public int getCol(int i) {
+        return moves[i] & 0xFF;
+    }
+
+    /**
+     * Copies the history into another one with the same capacity and stride,
+     * reusing its arrays if they are big enough
+     * @param other history to overwrite
+     */
+    public void copyInto(MoveHistory other) {
+        if (other.sizes.length != sizes.length) {
+            other.allocate(sizes.length);
+        }
+        System.arraycopy(moves, 0, other.moves, 0, moves.length);
+        System.arraycopy(sizes, 0, other.sizes, 0, sizes.length);
+        System.arraycopy(done, 0, other.done, 0, done.length);
+        other.first = first;
+        other.turns = turns;
+        other.redoTop = redoTop;
+    }
+
+    /**
+     * Replaces this history with the newest turns of another (usually unbounded) one,
+     * as many as fit, preferring turns that can be undone over ones to redo
+     * @param other history to copy from, with the same stride
+     */
+    public void loadFrom(MoveHistory other) {
+        int cap = bounded ? sizes.length : other.sizes.length;
+        if (!bounded && sizes.length < cap) {
+            allocate(cap);
+        }
+        first = Math.max(other.first, other.turns - cap);
+        turns = other.turns;
+        redoTop = Math.min(other.redoTop, first + cap);
+        for (int t = first; t < redoTop; t++) {
+            int from = other.slot(t);
+            System.arraycopy(other.moves, from * stride, moves, slot(t) * stride, stride);
+            sizes[slot(t)] = other.sizes[from];
+            done[slot(t)] = other.done[from];
+        }
+    }
+
+    /**
+     * Writes the history. A bounded history always takes the same number of bytes,
+     * whatever it holds, so records of it can be laid out at fixed offsets.
+     * @param out stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(bounded);
+        out.writeInt(sizes.length);
+        out.writeInt(stride);
+        out.writeInt(first);
+        out.writeInt(turns);
+        out.writeInt(redoTop);
+        for (short m : moves) {
+            out.writeShort(m);
+        }
+        out.write(sizes);
+        for (boolean d : done) {
+            out.writeBoolean(d);
+        }
+    }
+
+    /**
+     * Reads a history written by writeTo
+     * @param in stream to read from
+     * @return the history
+     * @throws IOException if the stream fails or ends early
+     */
+    public static MoveHistory readFrom(DataInput in) throws IOException {
+        boolean bounded = in.readBoolean();
+        int slots = in.readInt();
+        int stride = in.readInt();
+        if (slots <= 0 || stride <= 0 || (long) slots * stride > Integer.MAX_VALUE) {
+            throw new IOException("bad history size");
+        }
+        MoveHistory h = new MoveHistory(bounded ? slots : 0, stride);
+        if (!bounded) {
+            h.allocate(slots);
+        }
+        h.first = in.readInt();
+        h.turns = in.readInt();
+        h.redoTop = in.readInt();
+        for (int i = 0; i < h.moves.length; i++) {
+            h.moves[i] = in.readShort();
+        }
+        in.readFully(h.sizes);
+        for (int i = 0; i < h.done.length; i++) {
+            h.done[i] = in.readBoolean();
+        }
+        return h;
+    }
+
+    /**
+     * Builds the turns that can be undone as a list of turns, each a list of points
+     * (x = row, y = col)
+     * @return a new list, changes to it do not affect the history
+     */
+    public LinkedList<LinkedList<Point>> toLists() {
+        LinkedList<LinkedList<Point>> lists = new LinkedList<>();
+        for (int t = first; t < turns; t++) {
+            LinkedList<Point> turn = new LinkedList<>();
+            for (int i = getTurnStart(t); i < getTurnEnd(t); i++) {
+                turn.add(new Point(getRow(i), getCol(i)));
+            }
+            lists.add(turn);
+        }
+        return lists;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * The MoveRule interface says which moves a rule variant allows on a heap, so
+ * HeapNim can validate moves and GrundyTable can solve the variant. Rules are
+ * described the way octal games are: for each number of matches k that may be
+ * taken there is a digit whose bits say what may be left of the heap.
+ *
+ *   1 - take the whole heap (exactly k matches are left to take)
+ *   2 - take k from the end of the heap, leaving one smaller heap
+ *   4 - take k from the middle of the heap, leaving two non-empty heaps
+ *
+ * So the classic rule (take any number from one row) is 0.333..., take at most 3
+ * is 0.333, Kayles (knock down one or two adjacent pins) is 0.77 and Dawson's
+ * Kayles is 0.07. HeapNim only plays moves that leave a single heap, the splitting
+ * moves (bit 4) are counted by GrundyTable.
+ */
+public interface MoveRule {
+
+    // the following are the bits of a digit
+    int TAKE_ALL = 1;
+    int TAKE_END = 2;
+    int SPLIT = 4;
+
+    /**
+     * gets the digit for taking a number of matches
+     * @param count number of matches taken, at least 1
+     * @return bits of TAKE_ALL, TAKE_END and SPLIT, 0 if count can never be taken
+     */
+    int getDigit(long count);
+
+    /**
+     * gets the largest number of matches a move can take
+     * @return the largest count with a digit other than 0, or 0 if there is no limit
+     */
+    int getMaxTake();
+
+    /**
+     * Helper function determining if matches can be taken from the end of a heap
+     * (or the whole heap) under this rule
+     * @param heap number of matches in the heap
+     * @param count number of matches to take
+     * @return true if the move is allowed
+     */
+    default boolean isLegal(long heap, long count) {
+        if (count < 1 || count > heap) {
+            return false;
+        }
+        int d = getDigit(count);
+        return (d & (count == heap ? TAKE_ALL : TAKE_END)) != 0;
+    }
+
+    /**
+     * Creates the classic rule, any number of matches from one row
+     * @return the rule 0.333...
+     */
+    static MoveRule nim() {
+        return Octal.NIM;
+    }
+
+    /**
+     * Creates the rule taking between 1 and k matches from one row
+     * @param k largest number of matches to take
+     * @return the rule 0.33...3 with k digits
+     */
+    static MoveRule atMost(int k) {
+        int[] set = new int[k];
+        for (int i = 0; i < k; i++) {
+            set[i] = i + 1;
+        }
+        return subtraction(set);
+    }
+
+    /**
+     * Creates a subtraction game, where the number of matches taken must be in a set
+     * @param set allowed counts, each at least 1
+     * @return the rule with digit 3 at every count of the set
+     */
+    static MoveRule subtraction(int... set) {
+        int max = 0;
+        for (int k : set) {
+            if (k < 1) {
+                throw new IllegalArgumentException("counts must be at least 1");
+            }
+            max = Math.max(max, k);
+        }
+        int[] digits = new int[max + 1];
+        for (int k : set) {
+            digits[k] = TAKE_ALL | TAKE_END;
+        }
+        return new Octal(digits, 0);
+    }
+
+    /**
+     * Creates an octal game from its code
+     * @param code digits after the point, with or without a leading "0." (e.g. "0.77")
+     * @return the rule
+     */
+    static MoveRule octal(String code) {
+        String s = code.startsWith("0.") ? code.substring(2) : code.startsWith(".") ? code.substring(1) : code;
+        if (s.isEmpty()) {
+            throw new IllegalArgumentException("empty octal code");
+        }
+        int[] digits = new int[s.length() + 1];
+        for (int k = 1; k <= s.length(); k++) {
+            char ch = s.charAt(k - 1);
+            if (ch < '0' || ch > '7') {
+                throw new IllegalArgumentException("not an octal code: " + code);
+            }
+            digits[k] = ch - '0';
+        }
+        return new Octal(digits, 0);
+    }
+
+    /**
+     * The Octal class is a rule given by a finite list of digits, followed by one
+     * digit repeated for every larger count (0 for a finite code, 3 for the classic
+     * rule).
+     */
+    final class Octal implements MoveRule {
+
+        static final Octal NIM = new Octal(new int[1], TAKE_ALL | TAKE_END);
+
+        // digits[k] is the digit for taking k matches, digits[0] is unused
+        private final int[] digits;
+        // digit for every count past the end of digits
+        private final int rest;
+
+        Octal(int[] digits, int rest) {
+            // drop trailing zeros so getMaxTake is the last real digit
+            int n = digits.length;
+            while (n > 1 && digits[n - 1] == 0) {
+                n--;
+            }
+            if (n == 1 && rest == 0) {
+                throw new IllegalArgumentException("rule allows no moves");
+            }
+            this.digits = Arrays.copyOf(digits, n);
+            this.rest = rest;
+        }
+
+        @Override
+        public int getDigit(long count) {
+            return count < digits.length ? digits[(int) count] : rest;
+        }
+
+        @Override
+        public int getMaxTake() {
+            return rest != 0 ? 0 : digits.length - 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Octal && rest == ((Octal) o).rest
+                    && Arrays.equals(digits, ((Octal) o).digits);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(digits) + rest;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("0.");
+            for (int k = 1; k < digits.length; k++) {
+                sb.append(digits[k]);
+            }
+            if (rest != 0) {
+                sb.append(rest).append(rest).append(rest).append("...");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -1,17 +1,30 @@
 import java.awt.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
 import java.util.LinkedList;
 
 /**
  * The Nim class represents the model that is independent of the GUI components, etc.
- * It contains all the instance variables (arrays, ints, booleans, linkedlists, buffered
- * readers/writers, etc.) that are involved that are all private with get methods.
+ * It contains all the instance variables (ints, booleans, the move history, journal
+ * writer, etc.) that are involved that are all private with get methods.
+ * The board itself is packed into a single int, one bit per match, so copying,
+ * comparing and hashing a position is just an int operation. A Zobrist hash of the
+ * position (see getHash) is kept up to date by every move, undo and redo with one
+ * xor per match, for search-based players and their TranspositionTable.
  *
  * The constructor calls resetBoard and resetFile, the latter which is used for all the
- * I/O stuff. There is a helper method inBoard for testing whether a point given is in
- * the board (array index-wise). There are move, resetBoard, resetFile, turnDone, undo,
+ * I/O stuff. The file is written by a Journal on a background thread, so moves never
+ * wait for the disk; pause waits for the journal to catch up before anything is read.
+ * There is a helper method inBoard for testing whether a point given is in the board
+ * (array index-wise). There are move, resetBoard, resetFile, turnDone, undo, redo,
  * pause, and unpause that have counterparts in the GameBoard class (the resets both are
- * called in the GameBoard.reset method).
+ * called in the GameBoard.reset method). The history behind undo and redo is a ring
+ * of a fixed number of turns, so it stays the same size however long a game runs.
  *
  * These all represent the functions that would be accomplished by clicking on buttons
  * or matches in the actual game. There is also a checkWinner method that helps in the
@@ -19,10 +32,40 @@ import java.util.LinkedList;
  */
 public class Nim {
 
-    // ragged array that represents the board
-    private boolean[][] board;
-    // number of total matches left
-    private int numLeft;
+    // file the moves are written to and read back from
+    public static final String FILE = "./files/gameasfile.csv";
+    // number of rows on the board, row r holds 2 * r + 1 matches
+    public static final int ROWS = 4;
+    // packed board with every match present; match (r, c) lives at bit r * r + c
+    public static final int FULL_BOARD = 0xFFFF;
+    // turns kept for undo and redo by default, enough for any game on this board
+    public static final int DEFAULT_HISTORY = 16;
+    // undone records after which the file is compacted at the next done, 0 for never
+    public static final int DEFAULT_COMPACT_AFTER = Integer.getInteger("nim.journal.compactAfter", 0);
+    // masks selecting the bits of each row of the packed board
+    private static final int[] ROW_MASK = {0x1, 0xE, 0x1F0, 0xFE00};
+    // Zobrist keys: one per match (by bit), one for player 2 to move, and one per row
+    // for a turn in progress in it. Fixed so hashes are the same in every process.
+    private static final long[] ZOBRIST_MATCH = new long[16];
+    private static final long ZOBRIST_PLAYER2;
+    private static final long[] ZOBRIST_ROW = new long[ROWS];
+
+    static {
+        for (int i = 0; i < ZOBRIST_MATCH.length; i++) {
+            ZOBRIST_MATCH[i] = key(i);
+        }
+        ZOBRIST_PLAYER2 = key(ZOBRIST_MATCH.length);
+        for (int i = 0; i < ROWS; i++) {
+            ZOBRIST_ROW[i] = key(ZOBRIST_MATCH.length + 1 + i);
+        }
+    }
+
+    // packed board, one bit per match (set if the match is still there)
+    private int board;
+    // xor of the Zobrist keys of the matches in board
+    private long matchHash;
+    // board as of the last call to takeDirty, to tell which matches changed since
+    private int painted = FULL_BOARD;
     // row that player is currently removing from
     private int rowNow;
     // true if currently on player 1, false if on player 2
@@ -34,19 +77,93 @@ public class Nim {
     // if pause has been clicked, and unpause has not
     private boolean gamePaused;
     // all turns and moves within those turns
-    private LinkedList<LinkedList<Point>> movesInTurns;
-    // buffered writer/reader for pausing and unpausing
-    private BufferedWriter bw;
-    private BufferedReader br;
+    private MoveHistory history;
+    // file the moves are written to, or null if they aren't written at all
+    private final String path;
+    // number of turns the history keeps (0 for no limit)
+    private final int historyCapacity;
+    // whether turns evicted from the history can be read back from the file
+    private final boolean spill;
+    // state captured by pause, restored by unpause unless the file has changed
+    private Checkpoint checkpoint;
+    // background journal writing the file
+    private Journal journal;
+    // records in the file that undo has cancelled since it was last compacted
+    private int deadRecords;
+    // deadRecords at which turnDone compacts the file, 0 for never
+    private int compactAfter = DEFAULT_COMPACT_AFTER;
+    // false for the internal copies of uninstrumented, which count nothing in
+    // NimMetrics and record no NimEvents
+    private boolean instrumented = true;
 
     /**
      * Constructor sets up game state. Both resets are called on initial creation.
      */
     public Nim() {
+        this(true);
+    }
+
+    /**
+     * Constructor that can leave out the file entirely. A journal-free game never
+     * touches ./files/gameasfile.csv, so many of them can run in parallel without
+     * paying for disk I/O; pausing and unpausing then just toggle gamePaused.
+     * @param journaled true to write moves to the file like the GUI game does
+     */
+    public Nim(boolean journaled) {
+        this(journaled, DEFAULT_HISTORY, false);
+    }
+
+    /**
+     * Constructor that also sets how much history is kept for undo and redo. Once
+     * historyCapacity turns are kept, each new turn evicts the oldest one. With spill,
+     * evicted turns still count as history: they are only in the file, and undo reads
+     * them back from it when it runs out of turns in memory.
+     * @param journaled true to write moves to the file like the GUI game does
+     * @param historyCapacity number of turns kept in memory, 0 for no limit
+     * @param spill true to read evicted turns back from the file (journaled games only)
+     */
+    public Nim(boolean journaled, int historyCapacity, boolean spill) {
+        this(journaled ? FILE : null, historyCapacity, spill);
+    }
+
+    /**
+     * Constructor writing the moves to a file of its own instead of the shared
+     * ./files/gameasfile.csv, so many games can be journaled side by side (NimHost
+     * gives each session one)
+     * @param path file to write the moves to, or null for a journal-free game
+     */
+    public Nim(String path) {
+        this(path, DEFAULT_HISTORY, false);
+    }
+
+    /**
+     * Constructor writing the moves to a file of its own and setting how much
+     * history is kept, see Nim(boolean, int, boolean)
+     * @param path file to write the moves to, or null for a journal-free game
+     * @param historyCapacity number of turns kept in memory, 0 for no limit
+     * @param spill true to read evicted turns back from the file (journaled games only)
+     */
+    public Nim(String path, int historyCapacity, boolean spill) {
+        this.path = path;
+        this.historyCapacity = historyCapacity;
+        this.spill = spill && path != null;
         resetBoard();
         resetFile();
     }
 
+    /**
+     * Creates a journal-free game without a history limit for the model's own use,
+     * such as the copies NimSearch plays through or the replays behind undo and
+     * compaction. Its moves, turns and undos aren't the players', so they are left
+     * out of NimMetrics and NimEvents.
+     * @return new game, at the start like any other
+     */
+    static Nim uninstrumented() {
+        Nim n = new Nim(null, 0, false);
+        n.instrumented = false;
+        return n;
+    }
+
     /**
      * Helper function determining if a point is in the grid
      * @param r = row
@@ -54,16 +171,42 @@ public class Nim {
      * @return boolean that's true if in the board, false otherwise
      */
     public boolean inBoard(int r, int c) {
-        if (r == 0) {
-            return c == 0;
-        } else if (r == 1) {
-            return c >= 0 && c <= 2;
-        } else if (r == 2) {
-            return c >= 0 && c <= 4;
-        } else if (r == 3) {
-            return c >= 0 && c <= 6;
+        return r >= 0 && r < ROWS && c >= 0 && c <= 2 * r;
+    }
+
+    /**
+     * Helper function giving the bit of the packed board that holds a match
+     * @param r = row
+     * @param c = col
+     * @return int with only the bit for (r, c) set, assuming (r, c) is in the board
+     */
+    private static int bit(int r, int c) {
+        return 1 << (r * r + c);
+    }
+
+    /**
+     * Helper function giving the i-th Zobrist key, the i-th output of splitmix64
+     * from a fixed seed
+     */
+    private static long key(int i) {
+        long x = 0x4E494D5A4F425249L + (i + 1) * 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Computes the Zobrist hash of a board from scratch, without the player and
+     * turn state getHash adds
+     * @param bits packed board, same layout as getBits
+     * @return xor of the keys of the matches present
+     */
+    public static long hashOf(int bits) {
+        long h = 0;
+        for (int b = bits; b != 0; b &= b - 1) {
+            h ^= ZOBRIST_MATCH[Integer.numberOfTrailingZeros(b)];
         }
-        return false;
+        return h;
     }
 
     /**
@@ -79,8 +222,24 @@ public class Nim {
      */
 
     public boolean move(int r, int c) {
+        if (!instrumented) {
+            return takeMatch(r, c);
+        }
+        Object event = NimEvents.begin(NimEvents.MOVE);
+        boolean moved = takeMatch(r, c);
+        NimEvents.commitMove(event, r, c, moved);
+        return moved;
+    }
+
+    /**
+     * Body of move, without the flight recorder event
+     */
+    private boolean takeMatch(int r, int c) {
         // accessing a match that doesn't exist or is already taken, or game over
-        if (!inBoard(r, c) || !board[r][c] || gameOver) {
+        if (!inBoard(r, c) || (board & bit(r, c)) == 0 || gameOver) {
+            if (instrumented) {
+                NimMetrics.INSTANCE.moveRejected();
+            }
             return false;
         }
         // either assign r as startOfRow or check if r is in current row
@@ -88,34 +247,30 @@ public class Nim {
             rowNow = r;
         } else {
             if (r != rowNow) {
+                if (instrumented) {
+                    NimMetrics.INSTANCE.moveRejected();
+                }
                 return false;
             }
         }
         // if the game is paused, the writing doesn't occur (it just runs through this method)
-        if (!gamePaused) {
-            try {
-                bw.write("\nmove," + (getCurrentPlayer() ? "1," : "2,") + r + "," + c);
-                bw.flush();
-            } catch (IOException e) {
-            }
-        }
-        // apply move and change state for numLeft
-        board[r][c] = !board[r][c];
-        numLeft--;
-        // add a new LinkedList<Point> or add a Point to a last LinkedList<Point>
-        if (startOfTurn) {
-            LinkedList<Point> newTurn = new LinkedList<>();
-            newTurn.add(new Point(r, c));
-            movesInTurns.add(newTurn);
-        } else {
-            movesInTurns.getLast().add(new Point(r, c));
+        if (canWrite()) {
+            write("\nmove," + (getCurrentPlayer() ? "1," : "2,") + r + "," + c);
         }
+        // apply move by clearing the bit of the match
+        board &= ~bit(r, c);
+        matchHash ^= ZOBRIST_MATCH[r * r + c];
+        // add the move to the history, as the start of a new turn or to the last one
+        history.add(r, c, startOfTurn);
         // if there's no more matches, the game is over instantly
-        if (numLeft == 1) {
+        if (Integer.bitCount(board) == 1) {
             gameOver = true;
         }
         // after one move, we are no longer at the start of turn
         startOfTurn = false;
+        if (instrumented) {
+            NimMetrics.INSTANCE.moveAccepted();
+        }
         // default return
         return true;
     }
@@ -124,37 +279,40 @@ public class Nim {
      * reset the game state to start a new game, referring to actual board.
      */
     public void resetBoard() {
-        // creates ragged array and fills it with all true
-        board = new boolean[4][];
-        for (int i = 0; i < 4; i++) {
-            board[i] = new boolean[2 * i + 1];
-        }
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                board[i][j] = true;
-            }
-        }
+        // every match is present at the start
+        board = FULL_BOARD;
+        matchHash = hashOf(FULL_BOARD);
         // initialize int related quantities
-        numLeft = 16;
         rowNow = 0;
         // initializes boolean quantities
         player1 = true;
         startOfTurn = true;
         gameOver = false;
-        // creates Collections object for turns and moves therein
-        movesInTurns = new LinkedList<LinkedList<Point>>();
+        deadRecords = 0;
+        // empties the history of turns and moves therein
+        if (history == null) {
+            history = new MoveHistory(historyCapacity, 2 * ROWS - 1);
+        } else {
+            history.clear();
+        }
     }
 
     /**
      * resets file being written to when the game is reset so contents are overwritten
      */
     public void resetFile() {
+        if (path == null) {
+            return;
+        }
+        // the old journal finishes writing before the file is overwritten
+        if (journal != null) {
+            journal.close();
+        }
         try {
-            FileWriter w = new FileWriter("./files/gameasfile.csv", false);
-            bw = new BufferedWriter(w);
-            bw.write("start");
-            bw.flush();
+            journal = new Journal(path, false);
+            journal.append("start");
         } catch (IOException e) {
+            journal = null;
         }
     }
 
@@ -163,22 +321,39 @@ public class Nim {
      * @return false if game is over or if it's the start of a turn, true otherwise
      */
     public boolean turnDone() {
+        if (!instrumented) {
+            return endTurn();
+        }
+        Object event = NimEvents.begin(NimEvents.TURN_DONE);
+        boolean done = endTurn();
+        NimEvents.commitTurnDone(event, done);
+        return done;
+    }
+
+    /**
+     * Body of turnDone, without the flight recorder event
+     */
+    private boolean endTurn() {
         // check whether it is still start of turn or if the game is already over
         if (gameOver || startOfTurn) {
             return false;
         }
         // if game is paused, do not write to file
-        if (!gamePaused) {
-            try {
-                bw.write("\n" + "done," + (getCurrentPlayer() ? "1" : "2"));
-                bw.flush();
-            } catch (IOException e) {
-            }
+        if (canWrite()) {
+            write("\n" + "done," + (getCurrentPlayer() ? "1" : "2"));
         }
         // change the player
         player1 = !player1;
         // set to a new turn
         startOfTurn = true;
+        history.markDone();
+        if (instrumented) {
+            NimMetrics.INSTANCE.turnDone();
+        }
+        // a turn boundary: fold undone turns out of the file once enough have piled up
+        if (compactAfter > 0 && deadRecords >= compactAfter && canWrite()) {
+            compact(null);
+        }
         return true;
     }
 
@@ -187,51 +362,116 @@ public class Nim {
      * @return false if the game is over or there are not steps to undo, true otherwise
      */
     public boolean undo() {
-        // if no matches have been taken or the game is over, return false
-        if (gameOver || numLeft == 16) {
+        if (!instrumented) {
+            return takeBack();
+        }
+        Object event = NimEvents.begin(NimEvents.UNDO);
+        boolean undone = takeBack();
+        NimEvents.commitUndo(event, undone);
+        return undone;
+    }
+
+    /**
+     * Body of undo, without the flight recorder event
+     */
+    private boolean takeBack() {
+        // if there is no turn left to take back or the game is over, return false
+        if (gameOver || (history.isEmpty() && !reloadSpilled())) {
             return false;
         }
-        // get linkedlist of moves in last turn and integer representing their row
-        LinkedList<Point> turnToUndo = movesInTurns.getLast();
-        int r = (int) turnToUndo.getLast().getX();
-        // print out of "undo" and row to reput matches in
-        if (!gamePaused) {
-            try {
-                if (startOfTurn) {
-                    bw.write("\nundo," + (!getCurrentPlayer() ? "1," : "2,") + r);
-                } else {
-                    bw.write("\nundo," + (getCurrentPlayer() ? "1," : "2,") + r);
-                }
-            } catch (IOException e) {
+        // get the moves in last turn and integer representing their row
+        int t = history.getTurns() - 1;
+        int r = history.getRow(history.getTurnStart(t));
+        // "undo" and row to reput matches in, followed by each column put back
+        StringBuilder line = canWrite() ? new StringBuilder() : null;
+        if (line != null) {
+            if (startOfTurn) {
+                line.append("\nundo,").append(!getCurrentPlayer() ? "1," : "2,").append(r);
+            } else {
+                line.append("\nundo,").append(getCurrentPlayer() ? "1," : "2,").append(r);
             }
         }
-        // continues printing out each column for matches to be put back
-        for (Point p : turnToUndo) {
-            int c = (int) p.getY();
-            board[r][c] = true;
-            numLeft++;
-            if (!gamePaused) {
-                try {
-                    bw.write("," + c);
-                } catch (IOException e) {
-                }
+        for (int i = history.getTurnStart(t); i < history.getTurnEnd(t); i++) {
+            int c = history.getCol(i);
+            board |= bit(r, c);
+            matchHash ^= ZOBRIST_MATCH[r * r + c];
+            if (line != null) {
+                line.append(',').append(c);
             }
         }
-        // flush everything so it appears immediately
-        if (!gamePaused) {
-            try {
-                bw.flush();
-            } catch (IOException e) {
-            }
+        // write everything as one record; it and the records it cancels are now dead
+        if (line != null) {
+            write(line.toString());
+            deadRecords += history.getTurnEnd(t) - history.getTurnStart(t) + (startOfTurn ? 2 : 1);
         }
-        // remove the last turn that is now an empty linkedlist
-        movesInTurns.remove(movesInTurns.size() - 1);
+        // remove the last turn from the history
+        history.removeLastTurn();
         // calculate next player and go to start of turn
-        player1 = movesInTurns.size() % 2 == 0;
+        player1 = history.getTurns() % 2 == 0;
         startOfTurn = true;
+        if (instrumented) {
+            NimMetrics.INSTANCE.undone();
+        }
         return true;
     }
 
+    /**
+     * Method to redo the turn taken back most recently by undo. A turn that was ended
+     * with done is played again and ended; a turn that was still going is played
+     * again and left going. Only possible at the start of a turn, before anything
+     * else has been taken.
+     * @return false if the game is over, a turn is in progress or there is nothing to redo
+     */
+    public boolean redo() {
+        if (gameOver || !startOfTurn || !history.canRedo()) {
+            return false;
+        }
+        if (canWrite()) {
+            write("\nredo," + (getCurrentPlayer() ? "1" : "2"));
+        }
+        int t = history.getTurns();
+        int r = history.getRow(history.getTurnStart(t));
+        for (int i = history.getTurnStart(t); i < history.getTurnEnd(t); i++) {
+            board &= ~bit(r, history.getCol(i));
+            matchHash ^= ZOBRIST_MATCH[r * r + history.getCol(i)];
+        }
+        history.redoTurn();
+        rowNow = r;
+        if (history.isDone(t)) {
+            player1 = !player1;
+        } else {
+            startOfTurn = false;
+        }
+        if (Integer.bitCount(board) == 1) {
+            gameOver = true;
+        }
+        if (instrumented) {
+            NimMetrics.INSTANCE.redone();
+        }
+        return true;
+    }
+
+    /**
+     * Helper function reading turns evicted from the history back from the file:
+     * the file is walked through by a game without a history limit, and the newest
+     * turns of its history are loaded into this one
+     * @return true if there are turns to undo afterwards
+     */
+    private boolean reloadSpilled() {
+        if (!spill || gamePaused || history.getTurns() == 0 || journal == null) {
+            return false;
+        }
+        journal.sync();
+        Nim full = uninstrumented();
+        full.replayFrom(path, -1);
+        // only trust the file if it leads to the same position
+        if (full.board != board || full.history.getTurns() != history.getTurns()) {
+            return false;
+        }
+        history.loadFrom(full.history);
+        return !history.isEmpty();
+    }
+
     /**
      * checkWinner checks whether the game has reached a win condition.
      * checkWinner only looks for horizontal wins.
@@ -241,10 +481,8 @@ public class Nim {
     public int checkWinner() {
         // if there's only 1 left, gameOver and close writer; return player number or 0
         if (gameOver) {
-            try {
-                bw.flush();
-                bw.close();
-            } catch (IOException e) {
+            if (journal != null) {
+                journal.close();
             }
             return !player1 ? 2 : 1;
         } else {
@@ -252,66 +490,402 @@ public class Nim {
         }
     }
 
+    /**
+     * Rewrites the file to the shortest records that replay to this game (see
+     * JournalCompactor), so undone turns no longer cost anything to replay or keep.
+     * Only possible at the start of a turn with nothing to redo, while the game
+     * writes a file and isn't paused or over. The journal is closed while the file
+     * is rewritten and reopened after.
+     * @param archive file to move the old file to, or null to drop it
+     * @return false if the file wasn't compacted
+     */
+    public boolean compact(String archive) {
+        if (!canWrite() || gameOver || !startOfTurn || history.canRedo()) {
+            return false;
+        }
+        journal.close();
+        boolean compacted = true;
+        try {
+            // the history has every turn unless some were evicted, then the file is read
+            if (history.getFirst() == 0) {
+                JournalCompactor.write(history, path + ".compact", false);
+                JournalCompactor.replace(path, path + ".compact", archive);
+            } else {
+                JournalCompactor.compact(path, archive);
+            }
+            deadRecords = 0;
+        } catch (IOException e) {
+            compacted = false;
+        }
+        try {
+            journal = new Journal(path, true);
+        } catch (IOException e) {
+            journal = null;
+        }
+        return compacted;
+    }
+
+    /**
+     * Sets how many undone records make turnDone compact the file
+     * @param records threshold, 0 to never compact on its own
+     */
+    public void setCompactAfter(int records) {
+        compactAfter = records;
+    }
+
+    /**
+     * Finishes writing the file and stops its journal, for games that are dropped
+     * before they are over. Moves made afterwards are no longer written.
+     */
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
     /**
      * Method to pause a game (if possible), updating state of gamePaused
      */
     public void pause() {
         // if no matches have been taken or if the game is over, do nothing
-        if (numLeft == 16 || gameOver) {
+        if (board == FULL_BOARD || gameOver) {
             return;
         }
-        // flush so everything updates immediately, set game as paused
-        try {
-            bw.flush();
-        } catch (IOException e) {
+        // wait until everything is in the file, take a snapshot, set game as paused
+        if (journal != null) {
+            journal.sync();
         }
+        checkpoint = checkpoint();
         gamePaused = true;
+        if (instrumented) {
+            NimMetrics.INSTANCE.paused();
+        }
     }
 
     /**
-     * Method to unpause and read file I/O information to walk through steps again
+     * Method to unpause. The snapshot taken by pause is restored directly. If records
+     * were appended to the file since, only those are walked through, starting at the
+     * byte offset saved with the snapshot; only if the snapshot is missing or the file
+     * was rewritten is the whole file read to walk through the steps again
      */
     public void unpause() {
         // if pause hasn't just been clicked, pushing unpause doesn't do anything
         if (!isPaused()) {
             return;
         }
+        long start = System.nanoTime();
+        int state = checkpoint == null ? Checkpoint.STALE : checkpoint.check();
+        if (state == Checkpoint.STALE) {
+            if (path != null) {
+                replayJournal();
+            }
+        } else {
+            restore(checkpoint);
+            // only the records appended after the snapshot need to be walked through
+            if (state == Checkpoint.APPENDED) {
+                replayFrom(path, checkpoint.offset);
+            }
+        }
+        checkpoint = null;
+        // game is no longer paused
+        gamePaused = false;
+        if (instrumented) {
+            NimMetrics.INSTANCE.unpaused(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Resets the board and walks through every record in the file, the way unpause
+     * did before there were checkpoints. Nothing is written while it runs.
+     */
+    public void replayJournal() {
         // physical board is reset (not the file)
         resetBoard();
-        // buffered reader reads the lines, calling methods depending on first word after split
-        try {
-            FileReader r = new FileReader("./files/gameasfile.csv");
-            br = new BufferedReader(r);
-            String s = br.readLine();
-            while (s != null) {
-                String[] arr = s.split(",");
-                if (arr[0].equals("move")) {
-                    move(Integer.parseInt(arr[2]), Integer.parseInt(arr[3]));
-                } else if (arr[0].equals("done")) {
-                    turnDone();
-                } else if (arr[0].equals("undo")) {
-                    undo();
-                } else {
+        replayFrom(path == null ? FILE : path, -1);
+    }
+
+    /**
+     * Walks through the records of the file after a byte offset, applying them to the
+     * current state. The file is read as a binary journal if it has the header, as
+     * csv otherwise. Nothing is written while it runs.
+     * @param file file to read
+     * @param offset offset just after a record, or -1 for the whole file
+     */
+    private void replayFrom(String file, long offset) {
+        boolean wasPaused = gamePaused;
+        gamePaused = true;
+        Object event = instrumented ? NimEvents.begin(NimEvents.REPLAY) : null;
+        long records = 0;
+        try (JournalReader r = new JournalReader(file, offset)) {
+            while (true) {
+                try {
+                    int record = r.next();
+                    if (record == BinaryJournal.NONE) {
+                        break;
+                    }
+                    apply(record);
+                    records++;
+                } catch (IllegalArgumentException e) {
                     System.out.println("improper formatting");
                 }
-                s = br.readLine();
             }
-            br.close();
-        } catch (FileNotFoundException f) {
+        } catch (NoSuchFileException f) {
             System.out.println("file not found");
         } catch (IOException e) {
         }
-        // game is no longer paused
-        gamePaused = false;
+        NimEvents.commitReplay(event, file, offset, records);
+        gamePaused = wasPaused;
     }
 
-    // the following are get methods for the fields of this class
+    /**
+     * Takes a snapshot of the board, player, startOfTurn and history. For a journaled
+     * game it also notes the size and time of the file, to tell later if it changed.
+     * @return the snapshot, independent of later changes to this game
+     */
+    public Checkpoint checkpoint() {
+        MoveHistory copy = new MoveHistory(historyCapacity, 2 * ROWS - 1);
+        history.copyInto(copy);
+        long offset = path != null ? new File(path).length() : -1;
+        return new Checkpoint(board, rowNow, player1, startOfTurn, gameOver, copy,
+                path, offset, path != null ? tailCrc(path, offset) : 0);
+    }
+
+    /**
+     * Puts the game back in the state of a snapshot, without touching the file
+     * @param cp snapshot from checkpoint
+     */
+    public void restore(Checkpoint cp) {
+        board = cp.board;
+        matchHash = hashOf(board);
+        rowNow = cp.rowNow;
+        player1 = cp.player1;
+        startOfTurn = cp.startOfTurn;
+        gameOver = cp.gameOver;
+        cp.history.copyInto(history);
+    }
+
+    /**
+     * Helper function fingerprinting the end of the file before an offset, so a
+     * checkpoint (or a ReplayIndex) can tell an appended file from a rewritten one
+     * @param file file to read
+     * @param offset end of the bytes to check
+     * @return CRC32 of up to TAIL bytes before offset, or -1 if they can't be read
+     */
+    public static long tailCrc(String file, long offset) {
+        int len = (int) Math.min(Checkpoint.TAIL, offset);
+        ByteBuffer b = ByteBuffer.allocate(len);
+        try (FileChannel ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            while (b.hasRemaining() && ch.read(b, offset - len + b.position()) > 0) {
+                continue;
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        if (b.hasRemaining()) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, len);
+        return crc.getValue();
+    }
+
+    /**
+     * The Checkpoint class is a snapshot of a game taken by checkpoint. The packed
+     * board makes it a handful of fields plus the (at most 16 move) history. For a
+     * journaled game it also keeps the byte offset of the end of the file and a
+     * checksum of the bytes just before it.
+     */
+    public static final class Checkpoint {
+        // results of check
+        public static final int CURRENT = 0;
+        public static final int APPENDED = 1;
+        public static final int STALE = 2;
+        // number of bytes before the offset covered by the checksum
+        static final int TAIL = 64;
+
+        private final int board;
+        private final int rowNow;
+        private final boolean player1;
+        private final boolean startOfTurn;
+        private final boolean gameOver;
+        private final MoveHistory history;
+        // file of the game, its end when taken (-1 if there is none) and checksum of the
+        // bytes before it
+        private final String path;
+        private final long offset;
+        private final long tail;
+
+        private Checkpoint(int board, int rowNow, boolean player1, boolean startOfTurn,
+                           boolean gameOver, MoveHistory history,
+                           String path, long offset, long tail) {
+            this.board = board;
+            this.rowNow = rowNow;
+            this.player1 = player1;
+            this.startOfTurn = startOfTurn;
+            this.gameOver = gameOver;
+            this.history = history;
+            this.path = path;
+            this.offset = offset;
+            this.tail = tail;
+        }
+
+        /**
+         * Compares the file with the snapshot
+         * @return CURRENT if there is no file or it is unchanged, APPENDED if records were
+         *         only added after the offset, STALE if it was shortened or rewritten
+         */
+        public int check() {
+            if (offset < 0) {
+                return CURRENT;
+            }
+            long length = new File(path).length();
+            if (length < offset || tailCrc(path, offset) != tail) {
+                return STALE;
+            }
+            return length == offset ? CURRENT : APPENDED;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getBoard() {
+            return board;
+        }
+
+        /**
+         * Writes the game state of the snapshot (not the file offset, which only
+         * means something for the game that took it)
+         * @param out stream to write to
+         * @throws IOException if the stream fails
+         */
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeInt(board);
+            out.writeInt(rowNow);
+            out.writeBoolean(player1);
+            out.writeBoolean(startOfTurn);
+            out.writeBoolean(gameOver);
+            history.writeTo(out);
+        }
+
+        /**
+         * Reads a snapshot written by writeTo. It isn't tied to a file, so check
+         * always returns CURRENT.
+         * @param in stream to read from
+         * @return the snapshot
+         * @throws IOException if the stream fails or ends early
+         */
+        public static Checkpoint readFrom(DataInput in) throws IOException {
+            int board = in.readInt();
+            int rowNow = in.readInt();
+            boolean player1 = in.readBoolean();
+            boolean startOfTurn = in.readBoolean();
+            boolean gameOver = in.readBoolean();
+            MoveHistory history = MoveHistory.readFrom(in);
+            return new Checkpoint(board, rowNow, player1, startOfTurn, gameOver, history, null, -1, 0);
+        }
+    }
+
+    /**
+     * Calls the method a journal record stands for. Replays use it with writing
+     * turned off; on a journal-free game (like the one a ReplayViewer steps through)
+     * nothing is written either way.
+     * @param record record as read by BinaryJournal or parsed from a csv line
+     */
+    public void apply(int record) {
+        int type = BinaryJournal.type(record);
+        if (type == BinaryJournal.MOVE) {
+            move(BinaryJournal.row(record), BinaryJournal.col(record));
+        } else if (type == BinaryJournal.DONE) {
+            turnDone();
+        } else if (type == BinaryJournal.UNDO) {
+            undo();
+        } else if (type == BinaryJournal.EXTENDED && BinaryJournal.subType(record) == BinaryJournal.REDO) {
+            redo();
+        }
+    }
+
+    /**
+     * getBoard builds a ragged array view of the packed board, kept for the GUI
+     * and older callers. Changes to the returned array do not affect the game.
+     *
+     * @return a new boolean[4][] where true = match present
+     */
     public boolean[][] getBoard() {
+        boolean[][] view = new boolean[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            view[i] = new boolean[2 * i + 1];
+            for (int j = 0; j < view[i].length; j++) {
+                view[i][j] = getCell(i, j);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Helper function determining if moves should be written to the file right now
+     * @return true if the game has a file and isn't paused
+     */
+    private boolean canWrite() {
+        return path != null && !gamePaused && journal != null;
+    }
+
+    /**
+     * Hands one record to the journal, which writes it in the background
+     * @param s record text, starting with its newline
+     */
+    private void write(String s) {
+        journal.append(s);
+    }
+
+    // the following are get methods for the fields of this class
+    public boolean isJournaled() {
+        return path != null;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getBits() {
         return board;
     }
 
+    /**
+     * getHash gives the Zobrist hash of the position: the matches present, whose
+     * turn it is, and the row of a turn in progress. It is maintained as matches
+     * are taken and put back, so reading it is constant time.
+     *
+     * @return 64-bit hash, the same for the same position however it was reached
+     */
+    public long getHash() {
+        return matchHash ^ (player1 ? 0 : ZOBRIST_PLAYER2) ^ (startOfTurn ? 0 : ZOBRIST_ROW[rowNow]);
+    }
+
+    /**
+     * takeDirty tells which matches were taken or put back since it was last called,
+     * however they changed (moves, undo, redo, reset, unpause), so a view only has to
+     * redraw those. A match that was taken and put back in between doesn't count.
+     *
+     * @return packed mask of the matches that changed, same layout as getBits
+     */
+    public int takeDirty() {
+        int dirty = board ^ painted;
+        painted = board;
+        return dirty;
+    }
+
     public int getNumLeft() {
-        return numLeft;
+        return Integer.bitCount(board);
+    }
+
+    /**
+     * getRowCount counts the matches still present in one row
+     * @param r row to count, 0 to ROWS - 1
+     * @return number of matches left in row r
+     */
+    public int getRowCount(int r) {
+        return Integer.bitCount(board & ROW_MASK[r]);
     }
 
     public int getRowNow() {
@@ -326,8 +900,18 @@ public class Nim {
         return gameOver;
     }
 
+    /**
+     * getMovesInTurns builds the history as lists of turns and points (x = row,
+     * y = col), kept for older callers; the game itself only uses MoveHistory.
+     *
+     * @return a new list, changes to it do not affect the game
+     */
     public LinkedList<LinkedList<Point>> getMovesInTurns() {
-        return movesInTurns;
+        return history.toLists();
+    }
+
+    public MoveHistory getHistory() {
+        return history;
     }
 
     /**
@@ -348,10 +932,12 @@ public class Nim {
      * @param c column to retrieve
      * @param r row to retrieve
      * @return a boolean denoting the contents of the corresponding cell on the
-     *         game board. true = match present, false = no match present
+     *         game board. true = match present, false = no match present (or
+     *         not in the board)
      */
     public boolean getCell(int r, int c) {
-        return board[r][c];
+        // bit(r, c) of a cell outside the board is the bit of some other match
+        return inBoard(r, c) && (board & bit(r, c)) != 0;
     }
 
     /**
@@ -370,33 +956,34 @@ public class Nim {
         int movesInTurn = 0;
         // sets up a variable for which player's turn it is
         int turn;
-        // turn 1 on reset, otherwise calculate based on startOfTurn and movesInTurns size
-        if (movesInTurns.isEmpty()) {
+        // turn 1 on reset, otherwise calculate based on startOfTurn and number of turns
+        int turns = history.getTurns();
+        if (turns == 0) {
             turn = 1;
         } else {
             if (startOfTurn) {
                 movesInTurn = 0;
-                if (movesInTurns.size() % 2 == 1) {
-                    turn = movesInTurns.size() / 2 + movesInTurns.size() % 2;
+                if (turns % 2 == 1) {
+                    turn = turns / 2 + turns % 2;
                 } else {
-                    turn = movesInTurns.size() / 2 + movesInTurns.size() % 2 + 1;
+                    turn = turns / 2 + turns % 2 + 1;
                 }
             } else {
-                movesInTurn = movesInTurns.getLast().size();
-                turn = movesInTurns.size() / 2 + movesInTurns.size() % 2;
+                movesInTurn = history.getTurnEnd(turns - 1) - history.getTurnStart(turns - 1);
+                turn = turns / 2 + turns % 2;
             }
         }
         // print out model of board based on above info
         System.out.println("\n\nPlayer " + (player1 ? 1 : 2) + " Turn " + turn +
                 " Move " + movesInTurn + ":\n");
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                System.out.print(board[i][j]);
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j <= 2 * i; j++) {
+                System.out.print(getCell(i, j));
                 if (j < 2 * i) {
                     System.out.print(" | ");
                 }
             }
-            if (i < 3) {
+            if (i < ROWS - 1) {
                 System.out.println("\n---------");
             }
         }
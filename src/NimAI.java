@@ -0,0 +1,211 @@
+import java.util.Random;
+
+/**
+ * The NimAI class is a computer player that never searches. It looks at the
+ * heap sizes once, computes the nim-sum and picks an optimal row and number of
+ * matches, so choosing a move is linear in the number of rows.
+ *
+ * Under misere play (the rule checkWinner in Nim implements, last match loses)
+ * the normal nim-sum strategy is followed until at most one heap has more than
+ * one match. At that point the AI instead leaves an odd number of single-match
+ * heaps, so the opponent is forced to take the last one.
+ *
+ * Rule variants (see MoveRule) are played from a GrundyTable of the rule, with
+ * the same idea: the move brings the xor of the heaps' Grundy values to zero. That
+ * is the normal play strategy, under misere it is only a good heuristic.
+ *
+ * Moves are packed into a long: the row in the low 16 bits and the number of
+ * matches to take above that. The class has no state and works without any
+ * GUI, both on the classic Nim model and on HeapNim.
+ */
+public final class NimAI {
+
+    // returned by chooseMove when there is nothing left to take
+    public static final long NO_MOVE = -1;
+
+    private NimAI() {
+    }
+
+    /**
+     * Chooses an optimal move for the player about to take matches
+     * @param heaps number of matches left in each row
+     * @param misere true if the player taking the last match loses
+     * @return packed move (see moveRow and moveCount), or NO_MOVE if all heaps are empty
+     */
+    public static long chooseMove(long[] heaps, boolean misere) {
+        long x = 0;
+        int big = 0;
+        int bigRow = -1;
+        int ones = 0;
+        int largest = -1;
+        for (int i = 0; i < heaps.length; i++) {
+            long h = heaps[i];
+            x ^= h;
+            if (h > 1) {
+                big++;
+                bigRow = i;
+            } else if (h == 1) {
+                ones++;
+            }
+            if (h > 0 && (largest < 0 || h > heaps[largest])) {
+                largest = i;
+            }
+        }
+        // empty board, nothing to do
+        if (largest < 0) {
+            return NO_MOVE;
+        }
+        if (misere && big <= 1) {
+            // only single matches: take one, which is as good as anything
+            if (big == 0) {
+                return pack(largest, 1);
+            }
+            // one big heap: empty it or leave one so an odd number of singles remain
+            long h = heaps[bigRow];
+            return ones % 2 == 1 ? pack(bigRow, h) : pack(bigRow, h - 1);
+        }
+        // normal strategy: bring the nim-sum to zero if we can
+        if (x != 0) {
+            for (int i = 0; i < heaps.length; i++) {
+                long target = heaps[i] ^ x;
+                if (target < heaps[i]) {
+                    return pack(i, heaps[i] - target);
+                }
+            }
+        }
+        // losing position, stall by taking a single match from the largest row
+        return pack(largest, 1);
+    }
+
+    /**
+     * Chooses a move for a rule variant from its Grundy table, trying the counts
+     * the rule allows on each heap (at most getMaxTake of them)
+     * @param heaps number of matches left in each row
+     * @param table Grundy values of the rule
+     * @return packed move, or NO_MOVE if the rule allows no move
+     */
+    public static long chooseMove(long[] heaps, GrundyTable table) {
+        MoveRule rule = table.getRule();
+        int x = table.get(heaps);
+        long fallback = NO_MOVE;
+        for (int i = 0; i < heaps.length; i++) {
+            long h = heaps[i];
+            long max = rule.getMaxTake() == 0 ? h : Math.min(h, rule.getMaxTake());
+            for (long k = 1; k <= max; k++) {
+                if (!rule.isLegal(h, k)) {
+                    continue;
+                }
+                if (x != 0 && table.get(h - k) == (table.get(h) ^ x)) {
+                    return pack(i, k);
+                }
+                if (fallback == NO_MOVE) {
+                    fallback = pack(i, k);
+                }
+            }
+        }
+        // losing position (or the only winning moves split a heap), take the first legal move
+        return fallback;
+    }
+
+    /**
+     * Plays a whole turn for the current player of a Nim game: the chosen number
+     * of matches are taken from one row one at a time, then the turn is ended.
+     * @param n game to play in, which must be at the start of a turn
+     * @return false if the game is over or a turn is already in progress, true otherwise
+     */
+    public static boolean playTurn(Nim n) {
+        if (n.getGameOver() || !n.getStartOfTurn()) {
+            return false;
+        }
+        long[] heaps = new long[Nim.ROWS];
+        for (int i = 0; i < Nim.ROWS; i++) {
+            heaps[i] = n.getRowCount(i);
+        }
+        long m = chooseMove(heaps, true);
+        if (m == NO_MOVE) {
+            return false;
+        }
+        int r = moveRow(m);
+        long left = moveCount(m);
+        for (int c = 0; c <= 2 * r && left > 0; c++) {
+            if (n.getCell(r, c) && n.move(r, c)) {
+                left--;
+            }
+        }
+        // the game ends on its own once one match is left
+        if (!n.getGameOver()) {
+            n.turnDone();
+        }
+        return true;
+    }
+
+    /**
+     * Plays a random turn for the current player of a Nim game, taking between one
+     * match and the whole of a random non-empty row. Used as a weak opponent.
+     * @param n game to play in, which must be at the start of a turn
+     * @param rnd source of randomness
+     * @return false if the game is over or a turn is already in progress, true otherwise
+     */
+    public static boolean playRandomTurn(Nim n, Random rnd) {
+        if (n.getGameOver() || !n.getStartOfTurn()) {
+            return false;
+        }
+        // pick the k-th remaining match so bigger rows are chosen more often
+        int k = rnd.nextInt(n.getNumLeft());
+        int r = 0;
+        while (k >= n.getRowCount(r)) {
+            k -= n.getRowCount(r);
+            r++;
+        }
+        int left = 1 + rnd.nextInt(n.getRowCount(r));
+        for (int c = 0; c <= 2 * r && left > 0; c++) {
+            if (n.getCell(r, c) && n.move(r, c)) {
+                left--;
+            }
+        }
+        if (!n.getGameOver()) {
+            n.turnDone();
+        }
+        return true;
+    }
+
+    /**
+     * Plays one move for the current player of a HeapNim game
+     * @param h game to play in
+     * @return false if the game is over, true otherwise
+     */
+    public static boolean playTurn(HeapNim h) {
+        if (h.getGameOver()) {
+            return false;
+        }
+        long m = chooseMove(h.getHeaps(), h.isMisere());
+        return m != NO_MOVE && h.move(moveRow(m), moveCount(m));
+    }
+
+    /**
+     * Plays one move for the current player of a HeapNim game under its rule
+     * @param h game to play in
+     * @param table Grundy values of the game's rule
+     * @return false if the game is over, true otherwise
+     */
+    public static boolean playTurn(HeapNim h, GrundyTable table) {
+        if (h.getGameOver()) {
+            return false;
+        }
+        long m = chooseMove(h.getHeaps(), table);
+        return m != NO_MOVE && h.move(moveRow(m), moveCount(m));
+    }
+
+    // the following pack and unpack moves returned by chooseMove
+    public static long pack(int row, long count) {
+        return count << 16 | row;
+    }
+
+    public static int moveRow(long move) {
+        return (int) (move & 0xFFFF);
+    }
+
+    public static long moveCount(long move) {
+        return move >>> 16;
+    }
+}
@@ -0,0 +1,68 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimAITest class tests the moves chosen by NimAI.
+ */
+
+public class NimAITest {
+
+    @Test
+    public void chooseMoveZeroesNimSum() {
+        long m = NimAI.chooseMove(new long[] {1, 3, 5, 6}, true);
+        long[] heaps = {1, 3, 5, 6};
+        heaps[NimAI.moveRow(m)] -= NimAI.moveCount(m);
+        assertEquals(0, heaps[0] ^ heaps[1] ^ heaps[2] ^ heaps[3]);
+    }
+
+    @Test
+    public void chooseMoveMisereEndgame() {
+        // one big heap and two singles: empty the big heap would leave an even count
+        long m = NimAI.chooseMove(new long[] {1, 1, 4}, true);
+        assertEquals(2, NimAI.moveRow(m));
+        assertEquals(3, NimAI.moveCount(m));
+        // with normal play, the same position is won by emptying the big heap
+        m = NimAI.chooseMove(new long[] {1, 1, 4}, false);
+        assertEquals(4, NimAI.moveCount(m));
+    }
+
+    @Test
+    public void chooseMoveEmptyBoard() {
+        assertEquals(NimAI.NO_MOVE, NimAI.chooseMove(new long[] {0, 0}, true));
+    }
+
+    @Test
+    public void playTurnOnNim() {
+        Nim n = new Nim();
+        n.move(0, 0);
+        n.turnDone();
+        assertTrue(NimAI.playTurn(n));
+        assertTrue(n.getCurrentPlayer());
+        assertTrue(n.getStartOfTurn());
+        int x = 0;
+        for (int i = 0; i < Nim.ROWS; i++) {
+            x ^= n.getRowCount(i);
+        }
+        assertEquals(0, x);
+    }
+
+    @Test
+    public void aiBeatsItselfFromLosingStart() {
+        // the classic board has nim-sum zero, so the second player should win
+        Nim n = new Nim();
+        while (n.checkWinner() == 0) {
+            NimAI.playTurn(n);
+        }
+        assertEquals(2, n.checkWinner());
+    }
+
+    @Test
+    public void aiWinsHeapNim() {
+        HeapNim h = new HeapNim(new long[] {3, 4, 5}, true);
+        while (!h.getGameOver()) {
+            NimAI.playTurn(h);
+        }
+        assertEquals(1, h.checkWinner());
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The NimClient class is a small blocking client for NimServer, used by the tests
+ * and by remote bots. request sends one command and waits for its answer; pipeline
+ * sends a whole batch of commands in one write and only then reads the answers.
+ *
+ * Its main method is the load test for the server: a number of connections each
+ * play a fixed cycle of commands (move, done, undo, state) with a pipeline depth,
+ * and the requests per second and latency percentiles are printed at the end. The
+ * latency of a request is the time from sending its batch to reading its batch's
+ * last answer.
+ *
+ * Run from the command line as: NimClient [connections] [depth] [seconds] [port]
+ * (without a port an in-process server with journal-free games is started)
+ */
+public class NimClient implements Closeable {
+
+    // commands the load test repeats, which leave the board as they found it
+    private static final String[] CYCLE = {"move 3 0", "done", "undo", "state"};
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    /**
+     * Connects to a server on the loopback interface
+     * @param port port of the server
+     * @throws IOException if the connection fails
+     */
+    public NimClient(int port) throws IOException {
+        this.socket = new Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Sends one command and waits for the answer
+     * @param command command line, without the newline
+     * @return the answer line, without the newline
+     * @throws IOException if the connection fails or is closed
+     */
+    public String request(String command) throws IOException {
+        return pipeline(command).get(0);
+    }
+
+    /**
+     * Sends several commands at once, then reads their answers
+     * @param commands command lines, without newlines
+     * @return the answers, in the order of the commands
+     * @throws IOException if the connection fails or is closed
+     */
+    public List<String> pipeline(String... commands) throws IOException {
+        return pipeline(Arrays.asList(commands));
+    }
+
+    /**
+     * Sends several commands at once, then reads their answers
+     * @param commands command lines, without newlines
+     * @return the answers, in the order of the commands
+     * @throws IOException if the connection fails or is closed
+     */
+    public List<String> pipeline(List<String> commands) throws IOException {
+        for (String c : commands) {
+            out.write(c);
+            out.write('\n');
+        }
+        out.flush();
+        List<String> answers = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new EOFException("connection closed");
+            }
+            answers.add(line);
+        }
+        return answers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        NimServer server = null;
+        int port;
+        if (args.length > 3) {
+            port = Integer.parseInt(args[3]);
+        } else {
+            server = new NimServer(new NimHost(null), 0);
+            server.start();
+            port = server.getPort();
+        }
+        List<String> batch = new ArrayList<>(depth);
+        for (int i = 0; i < depth; i++) {
+            batch.add(CYCLE[i % CYCLE.length]);
+        }
+        // whole cycles only, so every batch starts from the full board
+        while (batch.size() % CYCLE.length != 0) {
+            batch.add(CYCLE[batch.size() % CYCLE.length]);
+        }
+        long end = System.nanoTime() + seconds * 1000000000L;
+        Thread[] threads = new Thread[connections];
+        long[][] latencies = new long[connections][];
+        int[] counts = new int[connections];
+        for (int t = 0; t < connections; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                long[] lat = new long[1 << 16];
+                int n = 0;
+                try (NimClient c = new NimClient(port)) {
+                    while (System.nanoTime() < end) {
+                        long start = System.nanoTime();
+                        c.pipeline(batch);
+                        long took = System.nanoTime() - start;
+                        if (n == lat.length) {
+                            lat = Arrays.copyOf(lat, n * 2);
+                        }
+                        lat[n++] = took;
+                    }
+                } catch (IOException e) {
+                    System.out.println("connection " + id + ": " + e);
+                }
+                latencies[id] = lat;
+                counts[id] = n;
+            });
+            threads[t].start();
+        }
+        int batches = 0;
+        for (int t = 0; t < connections; t++) {
+            threads[t].join();
+            batches += counts[t];
+        }
+        long[] all = new long[batches];
+        int k = 0;
+        for (int t = 0; t < connections; t++) {
+            System.arraycopy(latencies[t], 0, all, k, counts[t]);
+            k += counts[t];
+        }
+        Arrays.sort(all);
+        long requests = (long) batches * batch.size();
+        System.out.printf("%d connections, depth %d: %d requests in %d s (%.0f req/s)%n",
+                connections, batch.size(), requests, seconds, requests / (double) seconds);
+        if (batches > 0) {
+            System.out.printf("batch latency p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                    all[batches / 2] / 1e3, all[(int) (batches * 0.99)] / 1e3, all[batches - 1] / 1e3);
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * The NimEvents class records the JDK Flight Recorder events of the game: a move,
+ * the end of a turn, an undo, a replay of the file (with the number of records
+ * walked through), a journal batch written and flushed, and a paint of the board.
+ * They show up in a recording next to the JVM's own GC and I/O events, so a slow
+ * click can be lined up with what else was going on.
+ *
+ * The event classes are in JfrEvents, in the NimJfr module (jfr/), which needs
+ * jdk.jfr and so Java 11 to compile. This class doesn't link jdk.jfr: it loads
+ * JfrEvents by name only if jdk.jfr.FlightRecorder is there, and otherwise records
+ * nothing. So the game itself still builds with --release 8 and runs on a Java 8
+ * JVM without the flight recorder.
+ *
+ * A caller begins an event before the work and commits it after, with the fields
+ * of the event:
+ *
+ *     Object event = NimEvents.begin(NimEvents.MOVE);
+ *     ...
+ *     NimEvents.commitMove(event, r, c, moved);
+ *
+ * Every event is off unless a recording turns it on, which the profile
+ * files/nim.jfc does (e.g. -XX:StartFlightRecording:settings=default,settings=files/nim.jfc
+ * on JDK 17). While an event is off, the only cost is one read of its enabled flag:
+ * begin returns null, nothing is allocated and commit does nothing.
+ */
+public final class NimEvents {
+
+    // the following are the events that can be begun
+    public static final int MOVE = 0;
+    public static final int TURN_DONE = 1;
+    public static final int UNDO = 2;
+    public static final int REPLAY = 3;
+    public static final int JOURNAL_FLUSH = 4;
+    public static final int PAINT = 5;
+
+    // JfrEvents if the JVM has the flight recorder, a recorder of nothing otherwise
+    static final Recorder RECORDER = load();
+
+    private NimEvents() {
+    }
+
+    /**
+     * The Recorder interface is what JfrEvents implements. begin returns the event
+     * begun, or null if it is off, and the commit methods are only called with an
+     * event begin returned. The defaults record nothing.
+     */
+    interface Recorder {
+        default Object begin(int kind) {
+            return null;
+        }
+
+        default void commitMove(Object event, int row, int col, boolean accepted) {
+        }
+
+        default void commitTurnDone(Object event, boolean accepted) {
+        }
+
+        default void commitUndo(Object event, boolean accepted) {
+        }
+
+        default void commitReplay(Object event, String file, long offset, long records) {
+        }
+
+        default void commitJournalFlush(Object event, String file, int records, boolean forced) {
+        }
+
+        default void commitPaint(Object event, int clipWidth, int clipHeight, int matches) {
+        }
+    }
+
+    /**
+     * Helper function loading JfrEvents if the flight recorder is there
+     */
+    private static Recorder load() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return (Recorder) Class.forName("JfrEvents").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new Recorder() {
+            };
+        }
+    }
+
+    /**
+     * Begins an event if recording it is on
+     * @param kind MOVE, TURN_DONE, UNDO, REPLAY, JOURNAL_FLUSH or PAINT
+     * @return the event, to pass to its commit method, or null if it is off
+     */
+    public static Object begin(int kind) {
+        return RECORDER.begin(kind);
+    }
+
+    // the following end an event begun, doing nothing for null
+    public static void commitMove(Object event, int row, int col, boolean accepted) {
+        if (event != null) {
+            RECORDER.commitMove(event, row, col, accepted);
+        }
+    }
+
+    public static void commitTurnDone(Object event, boolean accepted) {
+        if (event != null) {
+            RECORDER.commitTurnDone(event, accepted);
+        }
+    }
+
+    public static void commitUndo(Object event, boolean accepted) {
+        if (event != null) {
+            RECORDER.commitUndo(event, accepted);
+        }
+    }
+
+    public static void commitReplay(Object event, String file, long offset, long records) {
+        if (event != null) {
+            RECORDER.commitReplay(event, file, offset, records);
+        }
+    }
+
+    public static void commitJournalFlush(Object event, String file, int records, boolean forced) {
+        if (event != null) {
+            RECORDER.commitJournalFlush(event, file, records, forced);
+        }
+    }
+
+    public static void commitPaint(Object event, int clipWidth, int clipHeight, int matches) {
+        if (event != null) {
+            RECORDER.commitPaint(event, clipWidth, clipHeight, matches);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The NimHost class runs many independent games of Nim in one process, one per
+ * session, instead of one Swing process per game. Each session is a Nim of its own
+ * with its own journal file, session-<id>.csv in the host's directory, so sessions
+ * never share gameasfile.csv (a host without a directory runs journal-free games).
+ *
+ * Sessions are only reached through call or submit, which run a function on the
+ * session's Nim while holding the session's lock, so two players of the same game
+ * can't interleave half a move, while different sessions never wait for each other.
+ * submit runs the function on a virtual thread when the JVM has them (Java 21 and
+ * later) and on a shared pool of daemon threads otherwise. The lock is a
+ * ReentrantLock rather than synchronized so a virtual thread waiting on it doesn't
+ * pin its carrier thread.
+ *
+ * Idle sessions hold no thread and no open file (see Journal), so thousands of them
+ * cost little more than their boards.
+ *
+ * Run from the command line as: NimHost [sessions] [directory]
+ */
+public class NimHost {
+
+    // directory the session files go into by default
+    public static final String DEFAULT_DIR = "./files/sessions";
+
+    // open sessions by id
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    // last id handed out
+    private final AtomicLong ids = new AtomicLong();
+    // directory of the session files, or null for journal-free sessions
+    private final String dir;
+    // runs the functions passed to submit
+    private final ExecutorService executor;
+
+    /**
+     * The Session class is one hosted game and the lock guarding it.
+     */
+    private static final class Session {
+        private final Nim nim;
+        private final ReentrantLock lock = new ReentrantLock();
+        // set by close, later calls are rejected
+        private boolean closed;
+
+        Session(Nim nim) {
+            this.nim = nim;
+        }
+    }
+
+    /**
+     * Creates a host writing its session files to DEFAULT_DIR
+     */
+    public NimHost() {
+        this(DEFAULT_DIR);
+    }
+
+    /**
+     * Creates a host
+     * @param dir directory for the session files (created if missing), or null to run
+     *            journal-free sessions
+     */
+    public NimHost(String dir) {
+        this.dir = dir;
+        if (dir != null) {
+            new File(dir).mkdirs();
+        }
+        this.executor = newExecutor();
+    }
+
+    /**
+     * Helper function creating the executor behind submit: a virtual thread per task
+     * if the JVM supports it, a cached pool of daemon threads otherwise
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "nim-host");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Starts a new game in a session of its own
+     * @return id of the session
+     */
+    public long create() {
+        long id = ids.incrementAndGet();
+        String path = dir == null ? null : new File(dir, "session-" + id + ".csv").getPath();
+        sessions.put(id, new Session(new Nim(path)));
+        return id;
+    }
+
+    /**
+     * Runs a function on the game of a session and waits for it. Calls on the same
+     * session run one at a time.
+     * @param id session to use
+     * @param action function given the session's Nim, which must not keep it
+     * @return what action returned
+     * @throws IllegalArgumentException if there is no open session with that id
+     */
+    public <T> T call(long id, Function<Nim, T> action) {
+        Session s = sessions.get(id);
+        if (s == null) {
+            throw new IllegalArgumentException("no session " + id);
+        }
+        s.lock.lock();
+        try {
+            if (s.closed) {
+                throw new IllegalArgumentException("no session " + id);
+            }
+            return action.apply(s.nim);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a function on the game of a session in the background, see call
+     * @param id session to use
+     * @param action function given the session's Nim, which must not keep it
+     * @return future completed with what action returned, or exceptionally if there
+     *         is no open session with that id
+     */
+    public <T> CompletableFuture<T> submit(long id, Function<Nim, T> action) {
+        return CompletableFuture.supplyAsync(() -> call(id, action), executor);
+    }
+
+    /**
+     * Ends a session: waits for any call in progress, finishes writing its file and
+     * forgets the game. The file is kept.
+     * @param id session to end
+     * @return false if there was no open session with that id
+     */
+    public boolean close(long id) {
+        Session s = sessions.remove(id);
+        if (s == null) {
+            return false;
+        }
+        s.lock.lock();
+        try {
+            s.closed = true;
+            s.nim.close();
+        } finally {
+            s.lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Closes every session and stops the threads behind submit
+     */
+    public void shutdown() {
+        for (Long id : new ArrayList<>(sessions.keySet())) {
+            close(id);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * gets the number of open sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * gets the file a session is written to
+     * @return path of the file, or null for a journal-free host or unknown session
+     */
+    public String getPath(long id) {
+        Session s = sessions.get(id);
+        return s == null ? null : s.nim.getPath();
+    }
+
+    /**
+     * Plays one game in each of many sessions at once, every turn submitted as its
+     * own task, and prints how long it took
+     * @param args number of sessions (default 1000), directory (default DEFAULT_DIR)
+     */
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        NimHost host = new NimHost(args.length > 1 ? args[1] : DEFAULT_DIR);
+        long start = System.nanoTime();
+        List<CompletableFuture<Integer>> games = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            games.add(host.play(host.create()));
+        }
+        int[] wins = new int[3];
+        for (CompletableFuture<Integer> g : games) {
+            wins[g.get()]++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(count + " sessions in " + String.format("%.3f", seconds) + " s, player 1 won "
+                + wins[1] + ", player 2 won " + wins[2]);
+        host.shutdown();
+        host.executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Helper function for main playing a session to the end with NimAI, one
+     * submitted turn after another
+     * @return future completed with the winner
+     */
+    private CompletableFuture<Integer> play(long id) {
+        return submit(id, n -> {
+            NimAI.playTurn(n);
+            return n.checkWinner();
+        }).thenCompose(w -> w != 0 ? CompletableFuture.completedFuture(w) : play(id));
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimHostTest class tests hosting many games at once in NimHost.
+ */
+
+public class NimHostTest {
+
+    @Test
+    public void sessionsAreIsolated() throws IOException {
+        Path dir = Files.createTempDirectory("nimhost");
+        NimHost host = new NimHost(dir.toString());
+        long a = host.create();
+        long b = host.create();
+        assertEquals(2, host.size());
+        assertNotEquals(host.getPath(a), host.getPath(b));
+        assertTrue(host.call(a, n -> n.move(3, 0) && n.turnDone()));
+        assertEquals(Nim.FULL_BOARD, (int) host.call(b, Nim::getBits));
+        assertEquals(15, (int) host.call(a, Nim::getNumLeft));
+        String path = host.getPath(a);
+        assertTrue(host.close(a));
+        assertFalse(host.close(a));
+        String file = new String(Files.readAllBytes(Paths.get(path)));
+        assertEquals("start\nmove,1,3,0\ndone,1", file);
+        path = host.getPath(b);
+        host.shutdown();
+        assertEquals("start", new String(Files.readAllBytes(Paths.get(path))));
+        assertEquals(0, host.size());
+        for (File f : dir.toFile().listFiles()) {
+            f.delete();
+        }
+        dir.toFile().delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSession() {
+        NimHost host = new NimHost(null);
+        host.call(42, Nim::getBits);
+    }
+
+    @Test
+    public void manyConcurrentSessions() throws Exception {
+        NimHost host = new NimHost(null);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ids.add(host.create());
+        }
+        // every session gets a turn per round, all submitted before any is waited on
+        boolean playing = true;
+        while (playing) {
+            List<CompletableFuture<Boolean>> turns = new ArrayList<>();
+            for (long id : ids) {
+                turns.add(host.submit(id, NimAI::playTurn));
+            }
+            playing = false;
+            for (CompletableFuture<Boolean> t : turns) {
+                playing |= t.get();
+            }
+        }
+        int winner = host.call(ids.get(0), Nim::checkWinner);
+        assertNotEquals(0, winner);
+        for (long id : ids) {
+            assertEquals(winner, (int) host.call(id, Nim::checkWinner));
+            assertEquals(1, (int) host.call(id, Nim::getNumLeft));
+        }
+        host.shutdown();
+    }
+
+    @Test
+    public void concurrentCallsOnOneSession() throws Exception {
+        NimHost host = new NimHost(null);
+        long id = host.create();
+        // only one of the racing moves on the same match can succeed
+        List<CompletableFuture<Boolean>> moves = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            moves.add(host.submit(id, n -> n.move(3, 3)));
+        }
+        int ok = 0;
+        for (CompletableFuture<Boolean> m : moves) {
+            ok += m.get() ? 1 : 0;
+        }
+        assertEquals(1, ok);
+        assertEquals(15, (int) host.call(id, Nim::getNumLeft));
+        host.shutdown();
+    }
+}
@@ -0,0 +1,569 @@
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The NimMcts class is a computer player for rule variants without a closed-form
+ * strategy (any MoveRule, normal or misere play): it runs Monte Carlo tree search
+ * within a budget of time or playouts and plays the move it visited most.
+ *
+ * Every worker thread searches the same tree (tree parallelization). A worker
+ * walks down by UCT, expands the leaf it reaches, plays random moves from there
+ * to the end of the game and adds the result to every node on its path. While it
+ * is on the way, the nodes it passed count VIRTUAL_LOSS extra visits without a
+ * win, so the other workers spread out over other moves instead of all following
+ * the same path. Statistics are updated with atomic adds and a node's children
+ * are published with one compare-and-set, so no locks are taken.
+ *
+ * Positions are kept by their PositionKey (heap counts, sorted), so taking from
+ * either of two equal heaps is one move. A move is packed as the size of the heap
+ * taken from (high 32 bits) and the number of matches taken. After a search the
+ * tree is kept: if the next search is for a position one or two moves below the
+ * old root (typically our move and the opponent's answer), it starts from that
+ * node and keeps its visits.
+ *
+ * playTurn plays a whole turn of a Nim game the way the model expects (several
+ * move calls, then turnDone), or one move of a HeapNim under its rule. Moves that
+ * split a heap (see MoveRule) are not played, as in HeapNim.
+ */
+public final class NimMcts implements Closeable {
+
+    // returned by chooseMove when there is no legal move
+    public static final long NO_MOVE = -1;
+    // visits a worker adds to each node on its path until its playout is in
+    public static final int VIRTUAL_LOSS = 1;
+    // UCT exploration constant
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    private final int threads;
+    private final long millis;
+    private final long maxPlayouts;
+    private final ExecutorService pool;
+    // tree kept from the last search, for reuse, and what it was searched for
+    private Node root;
+    private int[] rootState;
+    private MoveRule rootRule;
+    private boolean rootMisere;
+    private Result lastResult;
+
+    /**
+     * Constructor sets up a player with its own worker threads
+     * @param threads number of workers searching the tree
+     * @param millis time budget of a move, 0 for none
+     * @param maxPlayouts playout budget of a move, 0 for none
+     */
+    public NimMcts(int threads, long millis, long maxPlayouts) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("need at least one thread");
+        }
+        if (millis <= 0 && maxPlayouts <= 0) {
+            throw new IllegalArgumentException("need a time or playout budget");
+        }
+        this.threads = threads;
+        this.millis = millis;
+        this.maxPlayouts = maxPlayouts;
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "nim-mcts");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Creates a player on every core with a time budget
+     * @param millis time budget of a move
+     * @return new NimMcts
+     */
+    public static NimMcts withDeadline(long millis) {
+        return new NimMcts(Runtime.getRuntime().availableProcessors(), millis, 0);
+    }
+
+    /**
+     * The Result class holds what one search did.
+     */
+    public static final class Result {
+        public final long move;
+        public final long playouts;
+        public final long nanos;
+        // visits the root already had from the previous search
+        public final long reused;
+        // visits and wins of the move chosen
+        public final long visits;
+        public final long wins;
+
+        Result(long move, long playouts, long nanos, long reused, long visits, long wins) {
+            this.move = move;
+            this.playouts = playouts;
+            this.nanos = nanos;
+            this.reused = reused;
+            this.visits = visits;
+            this.wins = wins;
+        }
+
+        public double playoutsPerSecond() {
+            return nanos == 0 ? 0 : playouts * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("take %d from a heap of %d: %d playouts in %.3f s (%.0f playouts/s), "
+                    + "won %.1f%% of %d visits, %d visits reused",
+                    moveCount(move), moveHeap(move), playouts, nanos / 1e9, playoutsPerSecond(),
+                    100.0 * wins / Math.max(1, visits), visits, reused);
+        }
+    }
+
+    /**
+     * The Node class is one position of the tree. wins counts the playouts won by
+     * the player who made the move into it.
+     */
+    private static final class Node {
+        private static final AtomicIntegerFieldUpdater<Node> VISITS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+        private static final AtomicIntegerFieldUpdater<Node> WINS =
+                AtomicIntegerFieldUpdater.newUpdater(Node.class, "wins");
+        private static final AtomicReferenceFieldUpdater<Node, Node[]> CHILDREN =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node[].class, "children");
+
+        final long move;
+        volatile int visits;
+        volatile int wins;
+        // null until expanded, empty if the position has no move
+        volatile Node[] children;
+
+        Node(long move) {
+            this.move = move;
+        }
+    }
+
+    /**
+     * Chooses a move by searching within the budget
+     * @param heaps number of matches in each heap, in any order
+     * @param rule counts that can be taken from a heap
+     * @param misere true if the player making the last move loses
+     * @return packed move (see moveHeap and moveCount), or NO_MOVE if there is none
+     */
+    public synchronized long chooseMove(long[] heaps, MoveRule rule, boolean misere) {
+        long start = System.nanoTime();
+        int[] state = canonical(heaps);
+        Node r = reuse(state, rule, misere);
+        long reused = r.visits;
+        root = r;
+        rootState = state;
+        rootRule = rule;
+        rootMisere = misere;
+        // expand the root up front, so there is a move even if no playout finishes
+        Node[] ch = r.children != null ? r.children : expand(r, state, rule);
+        if (ch.length == 0) {
+            lastResult = new Result(NO_MOVE, 0, System.nanoTime() - start, reused, 0, 0);
+            return NO_MOVE;
+        }
+        long deadline = millis > 0 ? start + millis * 1000000L : Long.MAX_VALUE;
+        AtomicLong playouts = new AtomicLong();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final long seed = start * 31 + i;
+            workers.add(() -> {
+                work(r, state, rule, misere, deadline, playouts, new SplittableRandom(seed));
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : pool.invokeAll(workers)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("search failed", e.getCause());
+        }
+        // the most visited move is the one the search trusts most
+        Node best = null;
+        for (Node c : ch) {
+            if (best == null || c.visits > best.visits) {
+                best = c;
+            }
+        }
+        long done = maxPlayouts > 0 ? Math.min(playouts.get(), maxPlayouts) : playouts.get();
+        lastResult = new Result(best.move, done, System.nanoTime() - start, reused, best.visits, best.wins);
+        return best.move;
+    }
+
+    /**
+     * Helper function finding the position in the kept tree, one or two moves
+     * below its root, or starting a new tree
+     */
+    private Node reuse(int[] state, MoveRule rule, boolean misere) {
+        if (root == null || !rule.equals(rootRule) || misere != rootMisere) {
+            return new Node(0);
+        }
+        if (Arrays.equals(state, rootState)) {
+            return root;
+        }
+        Node[] ours = root.children;
+        if (ours == null) {
+            return new Node(0);
+        }
+        for (Node c : ours) {
+            int[] s1 = apply(rootState, c.move);
+            if (Arrays.equals(state, s1)) {
+                return c;
+            }
+            Node[] theirs = c.children;
+            if (theirs == null) {
+                continue;
+            }
+            for (Node g : theirs) {
+                if (Arrays.equals(state, apply(s1, g.move))) {
+                    return g;
+                }
+            }
+        }
+        return new Node(0);
+    }
+
+    /**
+     * Helper function running iterations of one worker until the budget is spent
+     */
+    private void work(Node r, int[] state, MoveRule rule, boolean misere, long deadline,
+                      AtomicLong playouts, SplittableRandom rnd) {
+        int[] s = new int[state.length];
+        Node[] path = new Node[64];
+        while (System.nanoTime() < deadline
+                && (maxPlayouts <= 0 || playouts.getAndIncrement() < maxPlayouts)) {
+            if (maxPlayouts <= 0) {
+                playouts.incrementAndGet();
+            }
+            System.arraycopy(state, 0, s, 0, s.length);
+            int len = 0;
+            Node node = r;
+            Node.VISITS.addAndGet(node, VIRTUAL_LOSS);
+            path[len++] = node;
+            boolean moverWins;
+            while (true) {
+                Node[] ch = node.children;
+                boolean expanded = false;
+                if (ch == null) {
+                    ch = expand(node, s, rule);
+                    expanded = true;
+                }
+                if (ch.length == 0) {
+                    // no move: the player to move wins only under misere
+                    moverWins = misere;
+                    break;
+                }
+                node = select(node, ch);
+                applyInPlace(s, node.move);
+                Node.VISITS.addAndGet(node, VIRTUAL_LOSS);
+                if (len == path.length) {
+                    path = Arrays.copyOf(path, len * 2);
+                }
+                path[len++] = node;
+                if (expanded) {
+                    moverWins = playout(s, rule, misere, rnd);
+                    break;
+                }
+            }
+            // the last node was entered by the opponent of the player to move there
+            boolean won = !moverWins;
+            for (int i = len - 1; i >= 0; i--) {
+                Node n = path[i];
+                Node.VISITS.addAndGet(n, 1 - VIRTUAL_LOSS);
+                if (won) {
+                    Node.WINS.incrementAndGet(n);
+                }
+                won = !won;
+            }
+        }
+    }
+
+    /**
+     * Helper function creating the children of a node, or getting the ones another
+     * worker created first
+     */
+    private static Node[] expand(Node node, int[] s, MoveRule rule) {
+        long[] moves = moves(s, rule);
+        Node[] ch = new Node[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            ch[i] = new Node(moves[i]);
+        }
+        if (!Node.CHILDREN.compareAndSet(node, null, ch)) {
+            ch = node.children;
+        }
+        return ch;
+    }
+
+    /**
+     * Helper function picking the child with the best UCT score, an unvisited one
+     * first
+     */
+    private static Node select(Node parent, Node[] ch) {
+        double logParent = Math.log(Math.max(1, parent.visits));
+        Node best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (Node c : ch) {
+            int v = c.visits;
+            if (v == 0) {
+                return c;
+            }
+            double score = (double) c.wins / v + EXPLORATION * Math.sqrt(logParent / v);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Helper function playing random moves to the end of the game
+     * @return true if the player to move at the start wins
+     */
+    private static boolean playout(int[] s, MoveRule rule, boolean misere, SplittableRandom rnd) {
+        boolean mover = true;
+        int t = rule.getMaxTake();
+        // (heap, count) pairs, or the heaps to pick from
+        int[] legal = new int[2 * s.length * Math.max(1, t)];
+        while (true) {
+            int n = 0;
+            if (t > 0) {
+                // every legal (heap, count), at most t per heap
+                for (int i = 0; i < s.length; i++) {
+                    for (int k = 1; k <= Math.min(s[i], t); k++) {
+                        if (rule.isLegal(s[i], k)) {
+                            legal[n++] = i;
+                            legal[n++] = k;
+                        }
+                    }
+                }
+                if (n == 0) {
+                    return misere == mover;
+                }
+                int m = 2 * rnd.nextInt(n / 2);
+                s[legal[m]] -= legal[m + 1];
+            } else {
+                // no limit: a random non-empty heap and a random count of it
+                for (int i = 0; i < s.length; i++) {
+                    if (s[i] > 0) {
+                        legal[n++] = i;
+                    }
+                }
+                if (n == 0) {
+                    return misere == mover;
+                }
+                int i = legal[rnd.nextInt(n)];
+                int k = 1 + rnd.nextInt(s[i]);
+                while (!rule.isLegal(s[i], k) && k > 1) {
+                    k--;
+                }
+                if (!rule.isLegal(s[i], k)) {
+                    // no count from this heap, don't pick it again
+                    return playoutSlow(s, rule, misere, rnd, mover);
+                }
+                s[i] -= k;
+            }
+            mover = !mover;
+        }
+    }
+
+    /**
+     * Helper function finishing a playout by listing every move, for unlimited
+     * rules where a heap can have no legal count
+     */
+    private static boolean playoutSlow(int[] s, MoveRule rule, boolean misere, SplittableRandom rnd,
+                                       boolean mover) {
+        while (true) {
+            long[] moves = moves(canonical(s), rule);
+            if (moves.length == 0) {
+                return misere == mover;
+            }
+            long m = moves[rnd.nextInt(moves.length)];
+            for (int i = 0; i < s.length; i++) {
+                if (s[i] == moveHeap(m)) {
+                    s[i] -= (int) moveCount(m);
+                    break;
+                }
+            }
+            mover = !mover;
+        }
+    }
+
+    /**
+     * Helper function listing the moves of a position, one per distinct heap size
+     * and count
+     */
+    private static long[] moves(int[] s, MoveRule rule) {
+        int t = rule.getMaxTake();
+        long[] moves = new long[8];
+        int n = 0;
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] == 0 || (i > 0 && s[i] == s[i - 1])) {
+                continue;
+            }
+            int top = t == 0 ? s[i] : Math.min(s[i], t);
+            for (int k = 1; k <= top; k++) {
+                if (rule.isLegal(s[i], k)) {
+                    if (n == moves.length) {
+                        moves = Arrays.copyOf(moves, n * 2);
+                    }
+                    moves[n++] = pack(s[i], k);
+                }
+            }
+        }
+        return Arrays.copyOf(moves, n);
+    }
+
+    /**
+     * Helper function giving the heaps of a position sorted, as PositionKey does,
+     * keeping empty heaps so every position of a game has the same length
+     */
+    private static int[] canonical(long[] heaps) {
+        int[] s = new int[heaps.length];
+        for (int i = 0; i < heaps.length; i++) {
+            if (heaps[i] < 0 || heaps[i] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("heap sizes must be between 0 and 2^31 - 1");
+            }
+            s[i] = (int) heaps[i];
+        }
+        Arrays.sort(s);
+        return s;
+    }
+
+    private static int[] canonical(int[] heaps) {
+        int[] s = heaps.clone();
+        Arrays.sort(s);
+        return s;
+    }
+
+    private static int[] apply(int[] s, long move) {
+        int[] next = s.clone();
+        applyInPlace(next, move);
+        return next;
+    }
+
+    /**
+     * Helper function taking a move on sorted heaps and keeping them sorted
+     */
+    private static void applyInPlace(int[] s, long move) {
+        int h = moveHeap(move);
+        int i = Arrays.binarySearch(s, h);
+        // the first heap of that size, so the smaller value slides down from there
+        while (i > 0 && s[i - 1] == h) {
+            i--;
+        }
+        int v = h - (int) moveCount(move);
+        while (i > 0 && s[i - 1] > v) {
+            s[i] = s[i - 1];
+            i--;
+        }
+        s[i] = v;
+    }
+
+    /**
+     * Plays one move for the current player of a HeapNim game under its rule
+     * @param h game to play in
+     * @return false if the game is over or there is no move, true otherwise
+     */
+    public boolean playTurn(HeapNim h) {
+        if (h.getGameOver()) {
+            return false;
+        }
+        long m = chooseMove(h.getHeaps(), h.getRule(), h.isMisere());
+        if (m == NO_MOVE) {
+            return false;
+        }
+        for (int i = 0; i < h.getNumRows(); i++) {
+            if (h.getHeap(i) == moveHeap(m)) {
+                return h.move(i, moveCount(m));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plays a whole turn for the current player of a Nim game (classic rule,
+     * misere): the chosen number of matches are taken from a row one at a time,
+     * then the turn is ended.
+     * @param n game to play in, which must be at the start of a turn
+     * @return false if the game is over or a turn is already in progress, true otherwise
+     */
+    public boolean playTurn(Nim n) {
+        if (n.getGameOver() || !n.getStartOfTurn()) {
+            return false;
+        }
+        long m = chooseMove(PositionKey.counts(n), MoveRule.nim(), true);
+        if (m == NO_MOVE) {
+            return false;
+        }
+        int r = 0;
+        while (n.getRowCount(r) != moveHeap(m)) {
+            r++;
+        }
+        long left = moveCount(m);
+        for (int c = 0; c <= 2 * r && left > 0; c++) {
+            if (n.getCell(r, c) && n.move(r, c)) {
+                left--;
+            }
+        }
+        // the game ends on its own once one match is left
+        if (!n.getGameOver()) {
+            n.turnDone();
+        }
+        return true;
+    }
+
+    /**
+     * gets what the last search did
+     * @return its result, or null before the first search
+     */
+    public synchronized Result getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // the following pack and unpack moves returned by chooseMove
+    public static long pack(int heap, int count) {
+        return (long) heap << 32 | count;
+    }
+
+    public static int moveHeap(long move) {
+        return (int) (move >>> 32);
+    }
+
+    public static long moveCount(long move) {
+        return move & 0xFFFFFFFFL;
+    }
+
+    public static void main(String[] args) {
+        String code = args.length > 0 ? args[0] : "0.77";
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        long[] heaps = {7, 9, 12, 15};
+        MoveRule rule = MoveRule.octal(code);
+        try (NimMcts mcts = withDeadline(millis)) {
+            HeapNim h = new HeapNim(heaps, true, rule);
+            while (!h.getGameOver()) {
+                long[] before = h.getHeaps();
+                mcts.playTurn(h);
+                System.out.println(Arrays.toString(before) + ": " + mcts.getLastResult());
+            }
+            System.out.println("player " + h.checkWinner() + " wins");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimMctsTest class tests that NimMcts finds winning moves under several
+ * rules, keeps to its budget, reuses its tree and plays whole turns of a game.
+ */
+
+public class NimMctsTest {
+
+    @Test
+    public void findsWinningMoves() {
+        MoveRule[] rules = {MoveRule.nim(), MoveRule.atMost(3), MoveRule.octal("0.07")};
+        long[][] positions = {{2, 3, 5}, {4, 6}, {1, 3, 5, 7}};
+        try (NimMcts mcts = new NimMcts(4, 0, 20000)) {
+            for (MoveRule rule : rules) {
+                for (boolean misere : new boolean[] {false, true}) {
+                    OutcomeTable table = OutcomeTable.compute(rule, misere, 4, 7);
+                    for (long[] p : positions) {
+                        if (!table.isWin(p)) {
+                            continue;
+                        }
+                        long m = mcts.chooseMove(p, rule, misere);
+                        long[] next = p.clone();
+                        for (int i = 0; i < next.length; i++) {
+                            if (next[i] == NimMcts.moveHeap(m)) {
+                                next[i] -= NimMcts.moveCount(m);
+                                break;
+                            }
+                        }
+                        assertFalse(rule + " " + misere + " from " + java.util.Arrays.toString(p),
+                                table.isWin(next));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepsToPlayoutBudget() {
+        try (NimMcts mcts = new NimMcts(3, 0, 5000)) {
+            mcts.chooseMove(new long[] {7, 9, 12}, MoveRule.atMost(4), false);
+            NimMcts.Result r = mcts.getLastResult();
+            assertEquals(5000, r.playouts);
+            assertTrue(r.playoutsPerSecond() > 0);
+            assertTrue(r.visits > 0 && r.visits <= 5000);
+        }
+    }
+
+    @Test
+    public void keepsToDeadline() {
+        try (NimMcts mcts = new NimMcts(2, 100, 0)) {
+            long start = System.nanoTime();
+            mcts.chooseMove(new long[] {15, 20, 25, 30}, MoveRule.octal("0.77"), true);
+            long millis = (System.nanoTime() - start) / 1000000;
+            // only the lower bound, a loaded machine can take long to stop the workers
+            assertTrue(millis >= 100);
+            assertTrue(mcts.getLastResult().playouts > 0);
+        }
+    }
+
+    @Test
+    public void noMoveLeft() {
+        try (NimMcts mcts = new NimMcts(1, 0, 100)) {
+            assertEquals(NimMcts.NO_MOVE, mcts.chooseMove(new long[] {0, 0}, MoveRule.nim(), false));
+            // 0.07 can't take a whole heap of one
+            assertEquals(NimMcts.NO_MOVE, mcts.chooseMove(new long[] {1, 1}, MoveRule.octal("0.07"), false));
+        }
+    }
+
+    @Test
+    public void reusesTreeAfterOpponentMoves() {
+        try (NimMcts mcts = new NimMcts(2, 0, 10000)) {
+            HeapNim h = new HeapNim(new long[] {5, 6, 7}, false, MoveRule.atMost(3));
+            assertTrue(mcts.playTurn(h));
+            assertEquals(0, mcts.getLastResult().reused);
+            assertTrue(NimAI.playTurn(h, GrundyTable.compute(MoveRule.atMost(3), 8)));
+            assertTrue(mcts.playTurn(h));
+            assertTrue(mcts.getLastResult().reused > 0);
+            // another rule starts over
+            mcts.chooseMove(h.getHeaps(), MoveRule.nim(), false);
+            assertEquals(0, mcts.getLastResult().reused);
+        }
+    }
+
+    @Test
+    public void beatsPerfectPlayerFromWin() {
+        MoveRule rule = MoveRule.atMost(3);
+        GrundyTable g = GrundyTable.compute(rule, 16);
+        try (NimMcts mcts = new NimMcts(4, 0, 20000)) {
+            // Grundy values h mod 4 = 3 and 2 xor to 1: a win for player 1
+            HeapNim h = new HeapNim(new long[] {3, 6}, false, rule);
+            assertNotEquals(0, g.get(h.getHeaps()));
+            while (!h.getGameOver()) {
+                assertTrue(h.getCurrentPlayer() ? mcts.playTurn(h) : NimAI.playTurn(h, g));
+            }
+            assertEquals(1, h.checkWinner());
+        }
+    }
+
+    @Test
+    public void playsWholeTurnOfNim() {
+        Nim n = new Nim(false);
+        // the full board is a loss, take the last row to leave 1, 3 and 5, a win
+        for (int c = 0; c < 7; c++) {
+            n.move(3, c);
+        }
+        n.turnDone();
+        try (NimMcts mcts = new NimMcts(2, 0, 20000)) {
+            boolean player = n.getCurrentPlayer();
+            int before = n.getBits();
+            assertTrue(mcts.playTurn(n));
+            assertTrue(n.getStartOfTurn());
+            assertNotEquals(player, n.getCurrentPlayer());
+            int taken = before & ~n.getBits();
+            assertNotEquals(0, taken);
+            // so the turn must leave a loss
+            OutcomeTable table = OutcomeTable.compute(MoveRule.nim(), true, 4, 7);
+            assertFalse(table.isWin(n));
+            // taken from one row only
+            int rows = 0;
+            for (int mask : new int[] {0x1, 0xE, 0x1F0, 0xFE00}) {
+                rows += (taken & mask) != 0 ? 1 : 0;
+            }
+            assertEquals(1, rows);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * The NimMetrics class counts what the game does and how long the slow parts take:
+ * moves accepted and rejected, turns, undos, redos, pauses and unpauses, latency
+ * histograms of journal flushes, unpause (restore and replay) and
+ * GameBoard.paintComponent, and the depth of the journal queues.
+ *
+ * There is one instance, INSTANCE, shared by every game in the process. Recording
+ * never allocates: counters are LongAdders (which only allocate their cells the
+ * first time threads collide on one) and histograms are preallocated
+ * LatencyHistograms, so the model can count every move of a million self-play
+ * games without creating garbage.
+ *
+ * The numbers are published as the MBean nim:type=Metrics (unless the
+ * nim.metrics.jmx property is false), and can also be dumped to a file every so
+ * often with startDump, or by setting nim.metrics.dumpMillis (to
+ * ./files/nim-metrics.txt, or nim.metrics.file).
+ */
+public final class NimMetrics implements NimMetricsMBean {
+
+    public static final NimMetrics INSTANCE = new NimMetrics();
+    public static final String OBJECT_NAME = "nim:type=Metrics";
+    public static final String DEFAULT_FILE = System.getProperty("nim.metrics.file", "./files/nim-metrics.txt");
+
+    private final LongAdder movesAccepted = new LongAdder();
+    private final LongAdder movesRejected = new LongAdder();
+    private final LongAdder turns = new LongAdder();
+    private final LongAdder undos = new LongAdder();
+    private final LongAdder redos = new LongAdder();
+    private final LongAdder pauses = new LongAdder();
+    private final LongAdder unpauses = new LongAdder();
+    private final LatencyHistogram journalFlush = new LatencyHistogram();
+    private final LatencyHistogram unpause = new LatencyHistogram();
+    private final LatencyHistogram paint = new LatencyHistogram();
+    // writes the file for startDump, null until started
+    private ScheduledExecutorService dumper;
+
+    static {
+        if (!"false".equals(System.getProperty("nim.metrics.jmx"))) {
+            INSTANCE.register();
+        }
+        long period = Long.getLong("nim.metrics.dumpMillis", 0);
+        if (period > 0) {
+            INSTANCE.startDump(DEFAULT_FILE, period);
+        }
+    }
+
+    private NimMetrics() {
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server, if it isn't already
+     */
+    private void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            }
+        } catch (Exception | LinkageError e) {
+            // metrics are optional, the game runs the same without JMX
+        }
+    }
+
+    // the following record events, called from the model, the journal and the board
+    public void moveAccepted() {
+        movesAccepted.increment();
+    }
+
+    public void moveRejected() {
+        movesRejected.increment();
+    }
+
+    public void turnDone() {
+        turns.increment();
+    }
+
+    public void undone() {
+        undos.increment();
+    }
+
+    public void redone() {
+        redos.increment();
+    }
+
+    public void paused() {
+        pauses.increment();
+    }
+
+    /**
+     * Records an unpause and how long it took to restore or replay the game
+     * @param nanos duration
+     */
+    public void unpaused(long nanos) {
+        unpauses.increment();
+        unpause.record(nanos);
+    }
+
+    /**
+     * Records how long a journal batch took to write and flush
+     * @param nanos duration
+     */
+    public void journalFlushed(long nanos) {
+        journalFlush.record(nanos);
+    }
+
+    /**
+     * Records how long the board took to paint
+     * @param nanos duration
+     */
+    public void painted(long nanos) {
+        paint.record(nanos);
+    }
+
+    /**
+     * Writes every metric to a file every period, replacing what was there. The
+     * file is written next to its final name and moved over it, so a reader never
+     * sees half of it. Calling it again changes the file and period.
+     * @param path file to write
+     * @param periodMillis time between writes
+     */
+    public synchronized void startDump(String path, long periodMillis) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "nim-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> {
+            try {
+                dump(path);
+            } catch (IOException e) {
+                // try again next period
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the writes started by startDump
+     */
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+    }
+
+    /**
+     * Writes every metric to a file now, one name=value per line
+     * @param path file to write
+     * @throws IOException if the file can't be written
+     */
+    public void dump(String path) throws IOException {
+        File file = new File(path);
+        File tmp = new File(path + ".tmp");
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            w.write(toString());
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("time=").append(System.currentTimeMillis()).append('\n');
+        sb.append("movesAccepted=").append(getMovesAccepted()).append('\n');
+        sb.append("movesRejected=").append(getMovesRejected()).append('\n');
+        sb.append("turns=").append(getTurns()).append('\n');
+        sb.append("undos=").append(getUndos()).append('\n');
+        sb.append("redos=").append(getRedos()).append('\n');
+        sb.append("pauses=").append(getPauses()).append('\n');
+        sb.append("unpauses=").append(getUnpauses()).append('\n');
+        sb.append("journalQueueDepth=").append(getJournalQueueDepth()).append('\n');
+        append(sb, "journalFlush", journalFlush);
+        append(sb, "unpause", unpause);
+        append(sb, "paint", paint);
+        return sb.toString();
+    }
+
+    private static void append(StringBuilder sb, String name, LatencyHistogram h) {
+        sb.append(name).append(".count=").append(h.getCount()).append('\n');
+        sb.append(name).append(".meanMicros=").append(h.getMean() / 1e3).append('\n');
+        sb.append(name).append(".p50Micros=").append(h.getPercentile(50) / 1e3).append('\n');
+        sb.append(name).append(".p99Micros=").append(h.getPercentile(99) / 1e3).append('\n');
+        sb.append(name).append(".maxMicros=").append(h.getMax() / 1e3).append('\n');
+    }
+
+    // the following are the attributes of the MBean
+    @Override
+    public long getMovesAccepted() {
+        return movesAccepted.sum();
+    }
+
+    @Override
+    public long getMovesRejected() {
+        return movesRejected.sum();
+    }
+
+    @Override
+    public long getTurns() {
+        return turns.sum();
+    }
+
+    @Override
+    public long getUndos() {
+        return undos.sum();
+    }
+
+    @Override
+    public long getRedos() {
+        return redos.sum();
+    }
+
+    @Override
+    public long getPauses() {
+        return pauses.sum();
+    }
+
+    @Override
+    public long getUnpauses() {
+        return unpauses.sum();
+    }
+
+    @Override
+    public int getJournalQueueDepth() {
+        return Journal.getTotalQueueDepth();
+    }
+
+    @Override
+    public long getJournalFlushCount() {
+        return journalFlush.getCount();
+    }
+
+    @Override
+    public double getJournalFlushMeanMicros() {
+        return journalFlush.getMean() / 1e3;
+    }
+
+    @Override
+    public double getJournalFlushP50Micros() {
+        return journalFlush.getPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getJournalFlushP99Micros() {
+        return journalFlush.getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getJournalFlushMaxMicros() {
+        return journalFlush.getMax() / 1e3;
+    }
+
+    @Override
+    public long getUnpauseCount() {
+        return unpause.getCount();
+    }
+
+    @Override
+    public double getUnpauseMeanMicros() {
+        return unpause.getMean() / 1e3;
+    }
+
+    @Override
+    public double getUnpauseP50Micros() {
+        return unpause.getPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getUnpauseP99Micros() {
+        return unpause.getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getUnpauseMaxMicros() {
+        return unpause.getMax() / 1e3;
+    }
+
+    @Override
+    public long getPaintCount() {
+        return paint.getCount();
+    }
+
+    @Override
+    public double getPaintMeanMicros() {
+        return paint.getMean() / 1e3;
+    }
+
+    @Override
+    public double getPaintP50Micros() {
+        return paint.getPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getPaintP99Micros() {
+        return paint.getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getPaintMaxMicros() {
+        return paint.getMax() / 1e3;
+    }
+
+    /**
+     * Clears every counter and histogram
+     */
+    @Override
+    public void reset() {
+        movesAccepted.reset();
+        movesRejected.reset();
+        turns.reset();
+        undos.reset();
+        redos.reset();
+        pauses.reset();
+        unpauses.reset();
+        journalFlush.reset();
+        unpause.reset();
+        paint.reset();
+    }
+}
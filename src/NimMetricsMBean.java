@@ -0,0 +1,54 @@
+/**
+ * The NimMetricsMBean interface is what JConsole and other JMX clients see of
+ * NimMetrics, under the name nim:type=Metrics. Durations are in microseconds.
+ */
+public interface NimMetricsMBean {
+
+    long getMovesAccepted();
+
+    long getMovesRejected();
+
+    long getTurns();
+
+    long getUndos();
+
+    long getRedos();
+
+    long getPauses();
+
+    long getUnpauses();
+
+    int getJournalQueueDepth();
+
+    long getJournalFlushCount();
+
+    double getJournalFlushMeanMicros();
+
+    double getJournalFlushP50Micros();
+
+    double getJournalFlushP99Micros();
+
+    double getJournalFlushMaxMicros();
+
+    long getUnpauseCount();
+
+    double getUnpauseMeanMicros();
+
+    double getUnpauseP50Micros();
+
+    double getUnpauseP99Micros();
+
+    double getUnpauseMaxMicros();
+
+    long getPaintCount();
+
+    double getPaintMeanMicros();
+
+    double getPaintP50Micros();
+
+    double getPaintP99Micros();
+
+    double getPaintMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,105 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Properties;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimMetricsTest class tests LatencyHistogram and the counters of NimMetrics.
+ */
+
+public class NimMetricsTest {
+
+    @Test
+    public void histogramPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(100000, h.getCount());
+        assertEquals(100000000L, h.getMax());
+        assertEquals(50000500.0, h.getMean(), 1);
+        assertEquals(50000000, h.getPercentile(50), 50000000 / 100);
+        assertEquals(99000000, h.getPercentile(99), 99000000 / 100);
+        assertEquals(100000000L, h.getPercentile(100));
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getPercentile(99));
+    }
+
+    @Test
+    public void histogramBuckets() {
+        for (long v : new long[] {0, 1, 127, 128, 129, 255, 256, 1000, 123456789, 1L << 40}) {
+            long high = LatencyHistogram.highest(LatencyHistogram.index(v));
+            assertTrue(high >= v);
+            assertTrue(high - v <= v / 100 + 1);
+        }
+        assertEquals(LatencyHistogram.index(1L << 41), LatencyHistogram.index(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mx;
+        long id = Thread.currentThread().getId();
+        Nim n = new Nim(false);
+        // warm up so counters have their cells and classes are loaded
+        for (int i = 0; i < 1000; i++) {
+            n.move(3, 0);
+            n.move(2, 0);
+            n.undo();
+            NimMetrics.INSTANCE.painted(i);
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100000; i++) {
+            n.move(3, 0);
+            n.move(2, 0);
+            n.undo();
+            NimMetrics.INSTANCE.painted(i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    public void countersAndJmx() throws Exception {
+        NimMetrics m = NimMetrics.INSTANCE;
+        long accepted = m.getMovesAccepted();
+        long rejected = m.getMovesRejected();
+        long turns = m.getTurns();
+        Nim n = new Nim(false);
+        n.move(3, 0);
+        n.move(2, 0);
+        n.turnDone();
+        n.pause();
+        n.unpause();
+        assertTrue(m.getMovesAccepted() >= accepted + 1);
+        assertTrue(m.getMovesRejected() >= rejected + 1);
+        assertTrue(m.getTurns() >= turns + 1);
+        assertTrue(m.getUnpauseCount() >= 1);
+        Object jmx = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName(NimMetrics.OBJECT_NAME), "MovesAccepted");
+        assertTrue((Long) jmx >= accepted + 1);
+    }
+
+    @Test
+    public void dumpToFile() throws IOException {
+        File f = File.createTempFile("metrics", ".txt");
+        NimMetrics.INSTANCE.dump(f.getPath());
+        Properties p = new Properties();
+        p.load(new StringReader(new String(Files.readAllBytes(f.toPath()))));
+        assertNotNull(p.getProperty("movesAccepted"));
+        assertNotNull(p.getProperty("journalFlush.p99Micros"));
+        assertNotNull(p.getProperty("journalQueueDepth"));
+        f.delete();
+    }
+}
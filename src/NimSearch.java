@@ -0,0 +1,188 @@
+/**
+ * The NimSearch class is a computer player that searches the game tree instead
+ * of using the nim-sum, so it plays any position of the board correctly without a
+ * closed-form strategy. It is negamax over whole turns: a turn takes any non-empty
+ * set of the matches left in one row, and a turn that leaves a single match wins.
+ *
+ * The search plays the turns on a journal-free copy of the game through move,
+ * turnDone and undo, and looks every position up in a TranspositionTable first,
+ * by the hash of its PositionKey. Which matches of a row are gone and in which
+ * row they are doesn't change who wins, so every board with the same sorted row
+ * counts shares one entry, whoever is to move: a full solve from the start of the
+ * game visits at most the 330 keys of the board instead of its 2^16 boards. The
+ * table can be shared by several searches (and threads) and stays valid across
+ * games.
+ *
+ * Table entries hold 1 for a win of the player to move and -1 for a loss, the
+ * number of matches left as the depth, and the best turn as the move, in terms of
+ * the key: the size of the row to take from (high byte) and how many matches to
+ * take (low byte).
+ */
+public final class NimSearch {
+
+    // entries by default, room for every key of the board
+    public static final int DEFAULT_CAPACITY = 1 << 12;
+    // masks selecting the bits of each row of the packed board, as in Nim
+    private static final int[] ROW_MASK = {0x1, 0xE, 0x1F0, 0xFE00};
+
+    private final TranspositionTable table;
+    // positions searched (not found in the table) by this search
+    private long nodes;
+
+    /**
+     * Constructor sets up a search with a table of its own
+     */
+    public NimSearch() {
+        this(new TranspositionTable(DEFAULT_CAPACITY, TranspositionTable.DEPTH_PREFERRED));
+    }
+
+    /**
+     * Constructor sets up a search using a table that may be shared
+     * @param table table of positions already searched
+     */
+    public NimSearch(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Finds the best turn for the player about to start a turn of a game
+     * @param n game to search, which isn't changed
+     * @return packed mask of the matches to take (same layout as getBits), or 0 if
+     *         the game is over or a turn is already in progress
+     */
+    public int bestTurn(Nim n) {
+        if (n.getGameOver() || !n.getStartOfTurn()) {
+            return 0;
+        }
+        // search a copy, so the game's own history and file are left alone
+        Nim copy = Nim.uninstrumented();
+        copy.restore(n.checkpoint());
+        // take the matches from a row of the size the key's move is for
+        int move = TranspositionTable.move(search(copy));
+        int board = n.getBits();
+        for (int r = 0; r < Nim.ROWS; r++) {
+            int row = board & ROW_MASK[r];
+            if (Integer.bitCount(row) == move >>> 8) {
+                int turn = 0;
+                for (int k = move & 0xFF; k > 0; k--) {
+                    turn |= row & -row;
+                    row &= row - 1;
+                }
+                return turn;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * gets whether the player about to start a turn wins with perfect play
+     * @param n game to search, which isn't changed
+     * @return true if the player to move wins
+     */
+    public boolean isWin(Nim n) {
+        if (n.getGameOver() || !n.getStartOfTurn()) {
+            throw new IllegalArgumentException("not at the start of a turn");
+        }
+        Nim copy = Nim.uninstrumented();
+        copy.restore(n.checkpoint());
+        return TranspositionTable.value(search(copy)) > 0;
+    }
+
+    /**
+     * Plays the best turn for the current player of a game and ends it
+     * @param n game to play in, which must be at the start of a turn
+     * @return false if the game is over or a turn is already in progress, true otherwise
+     */
+    public boolean playTurn(Nim n) {
+        int turn = bestTurn(n);
+        if (turn == 0) {
+            return false;
+        }
+        take(n, turn);
+        // the game ends on its own once one match is left
+        if (!n.getGameOver()) {
+            n.turnDone();
+        }
+        return true;
+    }
+
+    /**
+     * Helper function scoring a position at the start of a turn by negamax
+     * @return the entry for the position, as stored in the table (which may have
+     *         kept another entry in its place): 1 if the player to move wins, -1
+     *         if they lose, and the best turn
+     */
+    private long search(Nim n) {
+        long hash = PositionKey.hash(n);
+        long data = table.probe(hash);
+        if (data != TranspositionTable.MISS) {
+            return data;
+        }
+        nodes++;
+        int board = n.getBits();
+        int left = Integer.bitCount(board);
+        // a turn that leaves one match wins at once, look for one before searching
+        for (int r = 0; r < Nim.ROWS; r++) {
+            int row = board & ROW_MASK[r];
+            int size = Integer.bitCount(row);
+            if (row != 0 && left - size <= 1) {
+                // take the whole row, or all of it but one match
+                int take = left - size == 1 ? size : size - 1;
+                return store(hash, 1, left, size << 8 | take);
+            }
+        }
+        int fallback = 0;
+        int seen = 0;
+        for (int r = 0; r < Nim.ROWS; r++) {
+            int row = board & ROW_MASK[r];
+            int size = Integer.bitCount(row);
+            // rows of the same size have the same turns, and which matches are
+            // taken doesn't matter, so taking the lowest k covers them all
+            if (size == 0 || (seen & 1 << size) != 0) {
+                continue;
+            }
+            seen |= 1 << size;
+            int turn = 0;
+            for (int k = 1; k <= size; k++) {
+                // add the lowest match not taken yet
+                turn |= row & ~turn & -(row & ~turn);
+                take(n, turn);
+                n.turnDone();
+                int score = -TranspositionTable.value(search(n));
+                n.undo();
+                if (score > 0) {
+                    return store(hash, 1, left, size << 8 | k);
+                }
+                fallback = size << 8 | 1;
+            }
+        }
+        // every turn loses: stall by taking a single match
+        return store(hash, -1, left, fallback);
+    }
+
+    private long store(long hash, int value, int left, int move) {
+        table.store(hash, value, left, TranspositionTable.EXACT, move);
+        return TranspositionTable.pack(value, left, TranspositionTable.EXACT, move);
+    }
+
+    /**
+     * Helper function taking a set of matches of one row, without ending the turn
+     */
+    private static void take(Nim n, int turn) {
+        for (int b = turn; b != 0; b &= b - 1) {
+            int bit = Integer.numberOfTrailingZeros(b);
+            // bit r * r + c holds match (r, c)
+            int r = (int) Math.sqrt(bit);
+            n.move(r, bit - r * r);
+        }
+    }
+
+    // the following are get methods for the fields of this class
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+}
@@ -0,0 +1,190 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimSearchTest class tests the Zobrist hash kept by Nim, TranspositionTable,
+ * and the turns NimSearch finds.
+ */
+
+public class NimSearchTest {
+
+    @Test
+    public void hashFollowsMovesAndUndo() {
+        Nim n = new Nim(false);
+        long start = n.getHash();
+        assertEquals(Nim.hashOf(Nim.FULL_BOARD), start);
+        n.move(3, 0);
+        long mid = n.getHash();
+        assertNotEquals(start, mid);
+        n.move(3, 4);
+        n.turnDone();
+        long after = n.getHash();
+        n.undo();
+        assertEquals(start, n.getHash());
+        n.redo();
+        assertEquals(after, n.getHash());
+        n.resetBoard();
+        assertEquals(start, n.getHash());
+    }
+
+    @Test
+    public void hashIgnoresMoveOrder() {
+        Nim a = new Nim(false);
+        a.move(2, 1);
+        a.turnDone();
+        a.move(3, 6);
+        a.move(3, 2);
+        a.turnDone();
+        Nim b = new Nim(false);
+        b.move(2, 1);
+        b.turnDone();
+        b.move(3, 2);
+        b.move(3, 6);
+        b.turnDone();
+        assertEquals(a.getBits(), b.getBits());
+        assertEquals(a.getHash(), b.getHash());
+        // the same matches with the other player to move is another position
+        Nim c = new Nim(false);
+        c.move(2, 1);
+        c.move(2, 0);
+        c.undo();
+        c.move(2, 1);
+        c.turnDone();
+        c.move(3, 2);
+        c.move(3, 6);
+        assertNotEquals(b.getHash(), c.getHash());
+        c.turnDone();
+        assertEquals(b.getHash(), c.getHash());
+    }
+
+    @Test
+    public void hashSurvivesRestore() {
+        Nim n = new Nim(false);
+        n.move(1, 1);
+        n.turnDone();
+        Nim.Checkpoint cp = n.checkpoint();
+        long h = n.getHash();
+        n.move(3, 3);
+        n.restore(cp);
+        assertEquals(h, n.getHash());
+    }
+
+    @Test
+    public void tableStoresAndPacks() {
+        TranspositionTable t = new TranspositionTable(1000, TranspositionTable.ALWAYS_REPLACE);
+        assertEquals(1024, t.getCapacity());
+        assertEquals(TranspositionTable.MISS, t.probe(42));
+        assertTrue(t.store(42, -7, 12, TranspositionTable.UPPER_BOUND, 0xBEEF));
+        long data = t.probe(42);
+        assertEquals(-7, TranspositionTable.value(data));
+        assertEquals(12, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.UPPER_BOUND, TranspositionTable.bound(data));
+        assertEquals(0xBEEF, TranspositionTable.move(data));
+        assertEquals(TranspositionTable.MISS, t.probe(42 + 1024));
+        assertEquals(1, t.getHits());
+        t.clear();
+        assertEquals(TranspositionTable.MISS, t.probe(42));
+    }
+
+    @Test
+    public void replacementPolicies() {
+        TranspositionTable always = new TranspositionTable(1, TranspositionTable.ALWAYS_REPLACE);
+        always.store(1, 1, 10, TranspositionTable.EXACT, 0);
+        assertTrue(always.store(2, 1, 3, TranspositionTable.EXACT, 0));
+        assertEquals(TranspositionTable.MISS, always.probe(1));
+        TranspositionTable deep = new TranspositionTable(1, TranspositionTable.DEPTH_PREFERRED);
+        deep.store(1, 1, 10, TranspositionTable.EXACT, 0);
+        assertFalse(deep.store(2, 1, 3, TranspositionTable.EXACT, 0));
+        assertNotEquals(TranspositionTable.MISS, deep.probe(1));
+        // the same position is always overwritten, and deeper ones replace it
+        assertTrue(deep.store(1, -1, 2, TranspositionTable.EXACT, 0));
+        assertTrue(deep.store(2, 1, 3, TranspositionTable.EXACT, 0));
+        assertEquals(TranspositionTable.MISS, deep.probe(1));
+    }
+
+    @Test
+    public void searchAgreesWithNimSum() {
+        NimSearch s = new NimSearch();
+        Nim n = new Nim(false);
+        // 1 ^ 3 ^ 5 ^ 7 = 0, so the first player loses
+        assertFalse(s.isWin(n));
+        long nodes = s.getNodes();
+        // only sorted row counts are searched
+        assertTrue(nodes > 0 && nodes <= 330);
+        Random rnd = new Random(5);
+        for (int game = 0; game < 200; game++) {
+            n.resetBoard();
+            while (!n.getGameOver()) {
+                long[] heaps = new long[Nim.ROWS];
+                for (int r = 0; r < Nim.ROWS; r++) {
+                    heaps[r] = n.getRowCount(r);
+                }
+                assertEquals(!losing(heaps), s.isWin(n));
+                NimAI.playRandomTurn(n, rnd);
+            }
+        }
+        // solving from the start again is one lookup
+        assertTrue(s.getNodes() <= 330);
+        nodes = s.getNodes();
+        n.resetBoard();
+        assertFalse(s.isWin(n));
+        assertEquals(nodes, s.getNodes());
+    }
+
+    /**
+     * Helper function telling a lost misere position from its heaps
+     */
+    private static boolean losing(long[] heaps) {
+        long x = 0;
+        boolean singles = true;
+        long ones = 0;
+        for (long h : heaps) {
+            x ^= h;
+            singles &= h <= 1;
+            ones += h;
+        }
+        return singles ? ones % 2 == 1 : x == 0;
+    }
+
+    @Test
+    public void searchBeatsRandomPlayer() {
+        NimSearch s = new NimSearch();
+        Random rnd = new Random(11);
+        Nim n = new Nim(false);
+        for (int game = 0; game < 100; game++) {
+            n.resetBoard();
+            while (!n.getGameOver()) {
+                if (n.getCurrentPlayer()) {
+                    NimAI.playRandomTurn(n, rnd);
+                } else {
+                    assertTrue(s.playTurn(n));
+                }
+            }
+            // the first player starts from a lost position
+            assertEquals(2, n.checkWinner());
+        }
+    }
+
+    @Test
+    public void searchLeavesMetricsAlone() {
+        Nim n = new Nim(false);
+        n.move(3, 0);
+        n.turnDone();
+        NimMetrics m = NimMetrics.INSTANCE;
+        long accepted = m.getMovesAccepted();
+        long rejected = m.getMovesRejected();
+        long turns = m.getTurns();
+        long undos = m.getUndos();
+        // a fresh table, so the whole tree is played through
+        NimSearch s = new NimSearch();
+        assertNotEquals(0, s.bestTurn(n));
+        s.isWin(n);
+        assertEquals(accepted, m.getMovesAccepted());
+        assertEquals(rejected, m.getMovesRejected());
+        assertEquals(turns, m.getTurns());
+        assertEquals(undos, m.getUndos());
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * The NimServer class lets remote players (bots, load generators) drive games over
+ * TCP instead of clicking in GameBoard. Every connection gets a game of its own in
+ * a NimHost session, which is closed when the connection is. The rules are the ones
+ * in Nim, the server only translates lines into calls.
+ *
+ * The protocol is one command per line, answered by one line per command in order:
+ *
+ *   move r c   ok or no, as returned by Nim.move
+ *   done       ok or no, as returned by Nim.turnDone
+ *   undo       ok or no
+ *   redo       ok or no
+ *   pause      ok
+ *   unpause    ok
+ *   reset      ok, starts a new game (board and file)
+ *   state      state bits player startOfTurn winner, e.g. "state 65535 1 1 0"
+ *   quit       bye, then the connection is closed
+ *
+ * Anything else is answered with "error" and a reason. Clients may pipeline: send
+ * many commands without waiting, and the server answers everything that arrived
+ * in one read with a single write.
+ *
+ * The server is a single thread with a non-blocking selector. Lines are parsed
+ * straight from the read buffer, without building Strings. A connection whose
+ * answers can't all be written stops being read until they are, so a client that
+ * never reads can't make the server buffer without limit.
+ *
+ * pause, unpause and reset touch the disk (a flush barrier, a replay of the file,
+ * a new file), so they go to the host's executor with NimHost.submit instead of
+ * running on the selector thread, where one slow disk would stall every
+ * connection. Until the answer comes back, the connection's later lines wait in
+ * its read buffer and it isn't read, which keeps its answers in order. The
+ * executor queues the finished connection and wakes the selector, which writes
+ * the answer and carries on with the lines that waited.
+ */
+public class NimServer implements Runnable {
+
+    // size of the read and write buffers of each connection
+    private static final int BUFFER = 16 * 1024;
+    // longest line accepted, longer ones close the connection
+    private static final int MAX_LINE = 256;
+    private static final byte[] OK = "ok\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NO = "no\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BYE = "bye\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final NimHost host;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private volatile boolean running = true;
+    // connections whose command on the host's executor has finished
+    private final Queue<SelectionKey> finished = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The Connection class is the state kept for one client.
+     */
+    private static final class Connection {
+        private final long session;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER);
+        private ByteBuffer out = ByteBuffer.allocate(BUFFER);
+        // set by quit, the connection is closed once the answers are written
+        private boolean quit;
+        // set while a command runs on the host's executor, and its answer once done
+        private boolean waiting;
+        private byte[] reply;
+
+        Connection(long session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * Opens a server on the loopback interface
+     * @param host host the games of the connections are created in
+     * @param port port to listen on, 0 for any free one (see getPort)
+     * @throws IOException if the port can't be bound
+     */
+    public NimServer(NimHost host, int port) throws IOException {
+        this.host = host;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress("127.0.0.1", port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Starts the server on a daemon thread of its own
+     * @return the thread
+     */
+    public Thread start() {
+        Thread t = new Thread(this, "nim-server");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    /**
+     * Stops the server and closes every connection and its session
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Body of the server thread: accept, read, answer, until close is called
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (SelectionKey key = finished.poll(); key != null; key = finished.poll()) {
+                    resume(key);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isWritable()) {
+                                flush(key);
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                read(key);
+                            }
+                        }
+                    } catch (IOException e) {
+                        drop(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                drop(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = server.accept();
+        if (ch == null) {
+            return;
+        }
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        ch.register(selector, SelectionKey.OP_READ, new Connection(host.create()));
+    }
+
+    /**
+     * Closes a channel, and the session of a connection. The session of a connection
+     * waiting on the executor is closed when its command is done (see resume), so
+     * the selector doesn't wait for the command here.
+     */
+    private void drop(SelectionKey key) {
+        Object c = key.attachment();
+        if (c instanceof Connection && (!((Connection) c).waiting || !running)) {
+            host.close(((Connection) c).session);
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Reads what has arrived, answers every complete line, and writes the answers
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        int n = ((SocketChannel) key.channel()).read(c.in);
+        if (n < 0) {
+            drop(key);
+            return;
+        }
+        process(key);
+    }
+
+    /**
+     * Answers every complete line of the read buffer, stopping at a command sent to
+     * the executor, and writes the answers
+     */
+    private void process(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        c.in.flip();
+        int start = c.in.position();
+        for (int i = start; i < c.in.limit() && !c.quit && !c.waiting; i++) {
+            if (c.in.get(i) == '\n') {
+                handle(key, c, start, i);
+                start = i + 1;
+            }
+        }
+        c.in.position(start);
+        c.in.compact();
+        // what is left is one unfinished line, which can't be allowed to grow forever
+        if (!c.quit && !c.waiting && c.in.position() > MAX_LINE) {
+            drop(key);
+            return;
+        }
+        flush(key);
+    }
+
+    /**
+     * Queues the answer of a connection's command that ran on the executor, and
+     * goes on with the lines that came after it
+     */
+    private void resume(SelectionKey key) {
+        Connection c = (Connection) key.attachment();
+        c.waiting = false;
+        if (!key.isValid()) {
+            // dropped while the command ran
+            host.close(c.session);
+            return;
+        }
+        answer(c, c.reply);
+        try {
+            process(key);
+        } catch (IOException e) {
+            drop(key);
+        }
+    }
+
+    /**
+     * Runs a command on the host's executor. The connection isn't read and its
+     * other lines wait until the command is done.
+     */
+    private void submit(SelectionKey key, Connection c, Function<Nim, Object> action) {
+        c.waiting = true;
+        host.submit(c.session, action).whenComplete((v, e) -> {
+            c.reply = e == null ? OK : ("error " + (e.getCause() != null ? e.getCause() : e)
+                    .getMessage() + "\n").getBytes(StandardCharsets.US_ASCII);
+            finished.add(key);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Writes as much of the pending answers as the socket takes. Reading is paused
+     * while answers are left over, and resumed once they have all been written.
+     */
+    private void flush(SelectionKey key) throws IOException {
+        Connection c = (Connection) key.attachment();
+        c.out.flip();
+        ((SocketChannel) key.channel()).write(c.out);
+        boolean left = c.out.hasRemaining();
+        c.out.compact();
+        if (left) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (c.quit) {
+            drop(key);
+        } else {
+            key.interestOps(c.waiting ? 0 : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Runs the command on bytes [from, to) of the read buffer and queues the answer
+     */
+    private void handle(SelectionKey key, Connection c, int from, int to) {
+        ByteBuffer b = c.in;
+        // ignore a trailing \r and surrounding blanks
+        while (to > from && b.get(to - 1) <= ' ') {
+            to--;
+        }
+        while (from < to && b.get(from) <= ' ') {
+            from++;
+        }
+        int end = from;
+        while (end < to && b.get(end) != ' ') {
+            end++;
+        }
+        if (is(b, from, end, "move")) {
+            int r = digit(b, end + 1, to);
+            int col = digit(b, end + 3, to);
+            if (r < 0 || col < 0 || end + 4 != to || b.get(end + 2) != ' ') {
+                answer(c, "error usage: move r c\n");
+            } else {
+                answer(c, host.call(c.session, g -> g.move(r, col)).booleanValue());
+            }
+        } else if (end != to) {
+            answer(c, "error unexpected arguments\n");
+        } else if (is(b, from, end, "done")) {
+            answer(c, host.call(c.session, Nim::turnDone).booleanValue());
+        } else if (is(b, from, end, "undo")) {
+            answer(c, host.call(c.session, Nim::undo).booleanValue());
+        } else if (is(b, from, end, "redo")) {
+            answer(c, host.call(c.session, Nim::redo).booleanValue());
+        } else if (is(b, from, end, "pause")) {
+            submit(key, c, g -> {
+                g.pause();
+                return null;
+            });
+        } else if (is(b, from, end, "unpause")) {
+            submit(key, c, g -> {
+                g.unpause();
+                return null;
+            });
+        } else if (is(b, from, end, "reset")) {
+            submit(key, c, g -> {
+                g.resetBoard();
+                g.resetFile();
+                return null;
+            });
+        } else if (is(b, from, end, "state")) {
+            String state = host.call(c.session, g -> "state " + g.getBits() + " "
+                    + (g.getCurrentPlayer() ? 1 : 2) + " " + (g.getStartOfTurn() ? 1 : 0)
+                    + " " + g.checkWinner() + "\n");
+            answer(c, state);
+        } else if (is(b, from, end, "quit")) {
+            c.quit = true;
+            answer(c, BYE);
+        } else if (from == end) {
+            answer(c, "error empty line\n");
+        } else {
+            answer(c, "error unknown command\n");
+        }
+    }
+
+    /**
+     * Helper function comparing bytes [from, to) of a buffer with an ASCII word
+     */
+    private static boolean is(ByteBuffer b, int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (b.get(from + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper function reading a single digit
+     * @return the digit at index i, or -1 if there is none before to
+     */
+    private static int digit(ByteBuffer b, int i, int to) {
+        if (i >= to) {
+            return -1;
+        }
+        int d = b.get(i) - '0';
+        return d >= 0 && d <= 9 ? d : -1;
+    }
+
+    private static void answer(Connection c, boolean ok) {
+        answer(c, ok ? OK : NO);
+    }
+
+    private static void answer(Connection c, String s) {
+        answer(c, s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Queues an answer, growing the write buffer if a pipelined burst overflows it
+     */
+    private static void answer(Connection c, byte[] s) {
+        if (c.out.remaining() < s.length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(c.out.capacity() * 2, c.out.position() + s.length));
+            c.out.flip();
+            bigger.put(c.out);
+            c.out = bigger;
+        }
+        c.out.put(s);
+    }
+
+    /**
+     * Runs a server until the process is stopped
+     * @param args port (default 7777), directory of the session files (default
+     *             NimHost.DEFAULT_DIR, "none" for journal-free games)
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        String dir = args.length > 1 ? args[1] : NimHost.DEFAULT_DIR;
+        NimServer s = new NimServer(new NimHost(dir.equals("none") ? null : dir), port);
+        System.out.println("listening on 127.0.0.1:" + s.getPort());
+        s.run();
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The NimServerTest class tests the line protocol of NimServer over 127.0.0.1.
+ */
+
+public class NimServerTest {
+
+    @Test
+    public void playTurns() throws IOException {
+        NimServer s = new NimServer(new NimHost(null), 0);
+        s.start();
+        try (NimClient c = new NimClient(s.getPort())) {
+            assertEquals("state 65535 1 1 0", c.request("state"));
+            assertEquals("ok", c.request("move 3 0"));
+            assertEquals("no", c.request("move 2 0"));
+            assertEquals("ok", c.request("done"));
+            assertEquals("no", c.request("done"));
+            assertEquals("state 65023 2 1 0", c.request("state"));
+            assertEquals("ok", c.request("undo"));
+            assertEquals("ok", c.request("redo"));
+            assertEquals("ok", c.request("reset"));
+            assertEquals("state 65535 1 1 0", c.request("state"));
+        }
+        s.close();
+    }
+
+    @Test
+    public void pipelining() throws IOException {
+        NimServer s = new NimServer(new NimHost(null), 0);
+        s.start();
+        try (NimClient c = new NimClient(s.getPort())) {
+            List<String> batch = new ArrayList<>();
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                batch.addAll(Arrays.asList("move 3 0", "done", "undo", "state"));
+                expected.addAll(Arrays.asList("ok", "ok", "ok", "state 65535 1 1 0"));
+            }
+            assertEquals(expected, c.pipeline(batch));
+            assertEquals(Arrays.asList("ok", "ok", "ok", "ok"),
+                    c.pipeline("pause", "unpause", "move 0 0", "done"));
+        }
+        s.close();
+    }
+
+    @Test
+    public void errors() throws IOException {
+        NimServer s = new NimServer(new NimHost(null), 0);
+        s.start();
+        try (NimClient c = new NimClient(s.getPort())) {
+            assertEquals("error unknown command", c.request("jump"));
+            assertEquals("error usage: move r c", c.request("move 3"));
+            assertEquals("error usage: move r c", c.request("move 31 0"));
+            assertEquals("error unexpected arguments", c.request("done 1"));
+            assertEquals("error empty line", c.request(""));
+            assertEquals("no", c.request("move 9 9"));
+            assertEquals("ok", c.request("move 3 0\r"));
+            assertEquals("bye", c.request("quit"));
+            try {
+                c.request("state");
+                fail("connection should be closed after quit");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        s.close();
+    }
+
+    @Test
+    public void connectionsHaveOwnGames() throws IOException {
+        NimHost host = new NimHost(null);
+        NimServer s = new NimServer(host, 0);
+        s.start();
+        try (NimClient a = new NimClient(s.getPort()); NimClient b = new NimClient(s.getPort())) {
+            assertEquals("ok", a.request("move 3 0"));
+            assertEquals("ok", b.request("move 3 0"));
+            assertEquals("state 65023 1 0 0", b.request("state"));
+            assertEquals(2, host.size());
+        }
+        s.close();
+    }
+
+    @Test
+    public void slowCommandsDontStallOthers() throws Exception {
+        NimHost host = new NimHost(null);
+        NimServer s = new NimServer(host, 0);
+        s.start();
+        try (NimClient a = new NimClient(s.getPort()); NimClient b = new NimClient(s.getPort())) {
+            // the first connection gets session 1
+            assertEquals("ok", a.request("move 3 0"));
+            CountDownLatch held = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            // hold session 1, as a slow disk would while it resets
+            CompletableFuture<Object> slow = host.submit(1, g -> {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+            assertTrue(held.await(5, TimeUnit.SECONDS));
+            CompletableFuture<List<String>> answers = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return a.pipeline("reset", "state", "move 3 1");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // the other connection is still answered while the first one waits
+            assertEquals("ok", b.request("move 2 0"));
+            assertEquals("state 65519 1 0 0", b.request("state"));
+            assertFalse(answers.isDone());
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+            // and the first one's answers come in order, after the reset
+            assertEquals(Arrays.asList("ok", "state 65535 1 1 0", "ok"), answers.get(5, TimeUnit.SECONDS));
+        }
+        s.close();
+    }
+}
@@ -0,0 +1,219 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The OutcomeTable class solves every position of a few heaps under a MoveRule:
+ * for each one it keeps whether the player to move wins with perfect play. Unlike
+ * a GrundyTable it works under misere play too, where the xor of Grundy values
+ * says nothing, so it answers variants without a closed-form strategy.
+ *
+ * Only the multiset of heap sizes matters, so a position is stored once, by its
+ * PositionKey. The sorted heaps a[0] <= ... <= a[k-1] are ranked in colex order (the
+ * combinatorial number system, with b[i] = a[i] + i strictly increasing), which
+ * packs the C(max + k, k) multisets into consecutive bytes. Any move makes the
+ * largest changed heap smaller, so every option of a position has a smaller rank
+ * and the table is filled in one pass from rank 0 up.
+ *
+ * The classic board is outcomes of 4 heaps of at most 7 under the classic rule with
+ * misere play, 330 positions; isWin(Nim) looks a game up in it. Moves that split a
+ * heap (see MoveRule) would change the number of heaps and are not played, as in
+ * HeapNim.
+ */
+public final class OutcomeTable {
+
+    // the following are the values stored for a position
+    static final byte LOSS = 0;
+    static final byte WIN = 1;
+
+    private final MoveRule rule;
+    private final boolean misere;
+    private final int heaps;
+    private final int max;
+    // one byte per rank
+    private final ByteBuffer outcomes;
+    // binomial[n][r] = C(n, r) for n <= max + heaps, r <= heaps
+    private final long[][] binomial;
+
+    OutcomeTable(MoveRule rule, boolean misere, int heaps, int max, ByteBuffer outcomes) {
+        this.rule = rule;
+        this.misere = misere;
+        this.heaps = heaps;
+        this.max = max;
+        this.outcomes = outcomes;
+        this.binomial = binomials(max + heaps, heaps);
+    }
+
+    /**
+     * gets the number of positions of a table
+     * @param heaps number of heaps
+     * @param max largest heap size
+     * @return C(max + heaps, heaps)
+     * @throws IllegalArgumentException if that doesn't fit in an int
+     */
+    public static int size(int heaps, int max) {
+        if (heaps < 1 || max < 0) {
+            throw new IllegalArgumentException("need at least one heap and heap sizes of 0 or more");
+        }
+        long n = binomials(max + heaps, heaps)[max + heaps][heaps];
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(heaps + " heaps of at most " + max + " is too many positions");
+        }
+        return (int) n;
+    }
+
+    /**
+     * Solves every position
+     * @param rule counts that can be taken from a heap
+     * @param misere true if the player making the last move loses
+     * @param heaps number of heaps
+     * @param max largest heap size
+     * @return the table, kept in a direct buffer
+     */
+    public static OutcomeTable compute(MoveRule rule, boolean misere, int heaps, int max) {
+        int size = size(heaps, max);
+        OutcomeTable t = new OutcomeTable(rule, misere, heaps, max, ByteBuffer.allocateDirect(size));
+        int[] a = new int[heaps];
+        int[] option = new int[heaps];
+        for (int rank = 0; rank < size; rank++) {
+            t.outcomes.put(rank, t.solve(a, option));
+            // colex successor: bump the first heap smaller than the next one
+            int i = 0;
+            while (i < heaps - 1 && a[i] == a[i + 1]) {
+                i++;
+            }
+            if (i == heaps - 1 && a[i] == max) {
+                break;
+            }
+            a[i]++;
+            Arrays.fill(a, 0, i, 0);
+        }
+        return t;
+    }
+
+    /**
+     * Helper function deciding one position from the ones it can move to
+     */
+    private byte solve(int[] a, int[] option) {
+        boolean moved = false;
+        for (int i = 0; i < heaps; i++) {
+            // equal heaps have the same moves
+            if (i > 0 && a[i] == a[i - 1]) {
+                continue;
+            }
+            int top = rule.getMaxTake() == 0 ? a[i] : Math.min(a[i], rule.getMaxTake());
+            for (int k = 1; k <= top; k++) {
+                if (!rule.isLegal(a[i], k)) {
+                    continue;
+                }
+                moved = true;
+                System.arraycopy(a, 0, option, 0, heaps);
+                // take k from heap i and slide it down to keep the heaps sorted
+                int v = a[i] - k;
+                int j = i;
+                while (j > 0 && option[j - 1] > v) {
+                    option[j] = option[j - 1];
+                    j--;
+                }
+                option[j] = v;
+                if (outcomes.get(rank(option)) == LOSS) {
+                    return WIN;
+                }
+            }
+        }
+        // without a move the game is over: the last mover won, unless misere
+        if (!moved) {
+            return misere ? WIN : LOSS;
+        }
+        return LOSS;
+    }
+
+    /**
+     * Helper function ranking sorted heaps in colex order
+     */
+    private int rank(int[] sorted) {
+        long r = 0;
+        for (int i = 0; i < heaps; i++) {
+            r += binomial[sorted[i] + i][i + 1];
+        }
+        return (int) r;
+    }
+
+    private static long[][] binomials(int n, int k) {
+        long[][] c = new long[n + 1][k + 1];
+        for (int i = 0; i <= n; i++) {
+            c[i][0] = 1;
+            for (int j = 1; j <= Math.min(i, k); j++) {
+                c[i][j] = Math.min(Long.MAX_VALUE / 2, c[i - 1][j - 1] + c[i - 1][j]);
+            }
+        }
+        return c;
+    }
+
+    /**
+     * gets whether the player to move wins a position
+     * @param position number of matches in each heap, in any order (not changed)
+     * @return true if the player to move wins with perfect play
+     * @throws IllegalArgumentException if the position doesn't fit the table
+     */
+    public boolean isWin(long[] position) {
+        return isWin(PositionKey.of(position));
+    }
+
+    /**
+     * gets whether the player to move wins a position
+     * @param key canonical key of the position, at most getHeaps() heaps
+     * @return true if the player to move wins with perfect play
+     * @throws IllegalArgumentException if the position doesn't fit the table
+     */
+    public boolean isWin(PositionKey key) {
+        long[] keyHeaps = key.getHeaps();
+        if (keyHeaps.length > heaps) {
+            throw new IllegalArgumentException("table is for " + heaps + " heaps");
+        }
+        // the key leaves out empty heaps, they go first in sorted order
+        int[] sorted = new int[heaps];
+        int offset = heaps - keyHeaps.length;
+        for (int i = 0; i < keyHeaps.length; i++) {
+            if (keyHeaps[i] > max) {
+                throw new IllegalArgumentException("heap sizes must be between 0 and " + max);
+            }
+            sorted[offset + i] = (int) keyHeaps[i];
+        }
+        return outcomes.get(rank(sorted)) == WIN;
+    }
+
+    /**
+     * gets whether the player about to start a turn of a Nim game wins, in a table
+     * of the classic board
+     * @param n game to look up
+     * @return true if the player to move wins with perfect play
+     */
+    public boolean isWin(Nim n) {
+        return isWin(PositionKey.of(n));
+    }
+
+    /**
+     * gets the outcomes, e.g. to write them to a file
+     * @return a read-only view of one byte per rank, 1 for a win
+     */
+    public ByteBuffer getOutcomes() {
+        return outcomes.asReadOnlyBuffer();
+    }
+
+    // the following are get methods for the fields of this class
+    public MoveRule getRule() {
+        return rule;
+    }
+
+    public boolean isMisere() {
+        return misere;
+    }
+
+    public int getHeaps() {
+        return heaps;
+    }
+
+    public int getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/**
+ * The PositionKey class is the canonical form of a position for caches and
+ * analytics. Only how many matches each heap has matters, not which matches of a
+ * row are gone or in what order the rows are, so the key is the heap counts,
+ * sorted, with empty heaps left out. The classic board has 2^16 boards but only
+ * 330 keys.
+ *
+ * collapsed goes further and drops pairs of equal heaps, which cancel out (a
+ * player can always answer a move in one with the same move in the other). That
+ * holds under normal play for any MoveRule. Under misere play it holds for the
+ * classic rule as long as some heap of 2 or more is left, so when every big heap
+ * would go, one pair of 2s is kept in their place. A collapsed key only keeps the
+ * outcome, a move found for it may not exist in the original position.
+ *
+ * hash gives a 64-bit hash of the key without building it: the sum of a random
+ * key per heap count, which doesn't depend on the order of the heaps.
+ */
+public final class PositionKey {
+
+    // heap counts, sorted, no zeros
+    private final long[] heaps;
+    private final long hash;
+
+    private PositionKey(long[] heaps) {
+        this.heaps = heaps;
+        this.hash = hash(heaps);
+    }
+
+    /**
+     * Creates the key of a position
+     * @param position number of matches in each heap, in any order (not changed)
+     * @return the key
+     */
+    public static PositionKey of(long[] position) {
+        return new PositionKey(sort(position));
+    }
+
+    /**
+     * Creates the key of a Nim game's board
+     * @param n game
+     * @return the key of its row counts
+     */
+    public static PositionKey of(Nim n) {
+        return of(counts(n));
+    }
+
+    /**
+     * Creates the key of a position with pairs of equal heaps dropped
+     * @param position number of matches in each heap, in any order (not changed)
+     * @param misere true for misere play, which is only valid under the classic rule
+     * @return the key, with the same outcome as the position
+     */
+    public static PositionKey collapsed(long[] position, boolean misere) {
+        long[] sorted = sort(position);
+        long[] kept = new long[sorted.length];
+        int n = 0;
+        boolean big = false;
+        for (int i = 0; i < sorted.length; i++) {
+            big |= sorted[i] > 1;
+            if (i + 1 < sorted.length && sorted[i] == sorted[i + 1]) {
+                // drop the pair
+                i++;
+            } else {
+                kept[n++] = sorted[i];
+            }
+        }
+        if (misere && big && (n == 0 || kept[n - 1] <= 1)) {
+            // keep some heap of 2 or more: a pair of 2s has the same nim-sum as none
+            kept[n++] = 2;
+            kept[n++] = 2;
+        }
+        return new PositionKey(Arrays.copyOf(kept, n));
+    }
+
+    /**
+     * Helper function sorting the non-empty heaps of a position
+     */
+    private static long[] sort(long[] position) {
+        long[] sorted = new long[position.length];
+        int n = 0;
+        for (long h : position) {
+            if (h < 0) {
+                throw new IllegalArgumentException("heap sizes can't be negative");
+            }
+            if (h > 0) {
+                sorted[n++] = h;
+            }
+        }
+        sorted = Arrays.copyOf(sorted, n);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Helper function giving the row counts of a Nim game as heaps
+     */
+    static long[] counts(Nim n) {
+        long[] counts = new long[Nim.ROWS];
+        for (int i = 0; i < Nim.ROWS; i++) {
+            counts[i] = n.getRowCount(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Hashes the key of a position without creating it
+     * @param position number of matches in each heap, in any order
+     * @return the same value as of(position).hash()
+     */
+    public static long hash(long[] position) {
+        long h = 0;
+        for (long count : position) {
+            h += heapKey(count);
+        }
+        return h;
+    }
+
+    /**
+     * Hashes the key of a Nim game's board without creating it
+     * @param n game
+     * @return the same value as of(n).hash()
+     */
+    public static long hash(Nim n) {
+        long h = 0;
+        for (int i = 0; i < Nim.ROWS; i++) {
+            h += heapKey(n.getRowCount(i));
+        }
+        return h;
+    }
+
+    /**
+     * Helper function giving the random key of a heap count (splitmix64 of it), 0
+     * for an empty heap so it doesn't change the hash
+     */
+    private static long heapKey(long count) {
+        if (count == 0) {
+            return 0;
+        }
+        long x = count * 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * gets the heap counts of the key
+     * @return a new array of the non-empty heaps, sorted
+     */
+    public long[] getHeaps() {
+        return heaps.clone();
+    }
+
+    public int size() {
+        return heaps.length;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PositionKey && hash == ((PositionKey) o).hash
+                && Arrays.equals(heaps, ((PositionKey) o).heaps);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(heaps);
+    }
+}
@@ -0,0 +1,68 @@
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The PositionKeyTest class tests that PositionKey ignores what doesn't change the
+ * outcome of a position, and keeps what does.
+ */
+
+public class PositionKeyTest {
+
+    @Test
+    public void sortedWithoutEmptyHeaps() {
+        PositionKey k = PositionKey.of(new long[] {5, 0, 1, 3});
+        assertArrayEquals(new long[] {1, 3, 5}, k.getHeaps());
+        assertEquals(k, PositionKey.of(new long[] {3, 5, 1}));
+        assertEquals(k.hash(), PositionKey.hash(new long[] {0, 3, 1, 5}));
+        assertNotEquals(k, PositionKey.of(new long[] {1, 3, 4}));
+        assertNotEquals(k.hash(), PositionKey.hash(new long[] {1, 3, 4}));
+        assertEquals("[1, 3, 5]", k.toString());
+    }
+
+    @Test
+    public void boardsWithSameCountsShareKey() {
+        // one match from row 3 and one from row 2, different matches and rows
+        Nim a = new Nim(false);
+        a.move(3, 0);
+        a.turnDone();
+        a.move(2, 4);
+        a.turnDone();
+        Nim b = new Nim(false);
+        b.move(2, 2);
+        b.turnDone();
+        b.move(3, 6);
+        b.turnDone();
+        assertNotEquals(a.getBits(), b.getBits());
+        assertEquals(PositionKey.of(a), PositionKey.of(b));
+        assertEquals(PositionKey.hash(a), PositionKey.hash(b));
+        assertEquals(PositionKey.of(a).hash(), PositionKey.hash(a));
+    }
+
+    @Test
+    public void collapsePairs() {
+        assertArrayEquals(new long[] {4}, PositionKey.collapsed(new long[] {3, 4, 3, 1, 1}, false).getHeaps());
+        assertEquals(0, PositionKey.collapsed(new long[] {6, 6}, false).size());
+        // misere keeps a big pair when only small heaps would be left
+        assertArrayEquals(new long[] {1, 2, 2}, PositionKey.collapsed(new long[] {6, 6, 1}, true).getHeaps());
+        assertArrayEquals(new long[] {1, 5}, PositionKey.collapsed(new long[] {6, 6, 1, 5}, true).getHeaps());
+        assertArrayEquals(new long[] {1}, PositionKey.collapsed(new long[] {1, 1, 1}, true).getHeaps());
+    }
+
+    @Test
+    public void collapseKeepsOutcome() {
+        OutcomeTable misere = OutcomeTable.compute(MoveRule.nim(), true, 4, 7);
+        OutcomeTable normal = OutcomeTable.compute(MoveRule.nim(), false, 4, 7);
+        for (int a = 0; a <= 7; a++) {
+            for (int b = 0; b <= 7; b++) {
+                for (int c = 0; c <= 7; c++) {
+                    for (int d = 0; d <= 7; d++) {
+                        long[] p = {a, b, c, d};
+                        assertEquals(misere.isWin(p), misere.isWin(PositionKey.collapsed(p, true)));
+                        assertEquals(normal.isWin(p), normal.isWin(PositionKey.collapsed(p, false)));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The ReplayIndex class is a sidecar file (the journal's name plus ".idx") that
+ * lets a ReplayViewer jump to any turn of a journal without walking through the
+ * records before it. A step is a turn boundary: step 0 is the empty board, step i
+ * is just after the i-th done record, and if the file doesn't end with done, its
+ * end is one more step. The index keeps the byte offset of every step, and every
+ * interval steps a serialized Nim.Checkpoint of the game at that step.
+ *
+ * The sidecar is a header followed by blocks of the same size, each a checkpoint
+ * and then the offsets of the interval steps starting at it, so the checkpoint
+ * and offset of any step are at computed positions: finding them is constant
+ * time, and only ever reads those bytes. Building streams the journal through a
+ * JournalReader and the sidecar through a buffered stream, so neither file has to
+ * fit in memory, however many gigabytes the game log is.
+ *
+ * The header records the length of the journal and a checksum of its end; open
+ * rebuilds a sidecar that doesn't match the journal any more.
+ */
+public class ReplayIndex implements Closeable {
+
+    public static final byte[] MAGIC = {'N', 'I', 'M', 'X'};
+    public static final int VERSION = 1;
+    // steps per checkpoint by default
+    public static final int DEFAULT_INTERVAL = 64;
+    // bytes before the first block
+    private static final int HEADER = 40;
+
+    private final FileChannel channel;
+    private final int interval;
+    private final int checkpointSize;
+    private final long steps;
+    // bytes per block: a checkpoint and interval offsets
+    private final long blockSize;
+
+    private ReplayIndex(FileChannel channel, int interval, int checkpointSize, long steps) {
+        this.channel = channel;
+        this.interval = interval;
+        this.checkpointSize = checkpointSize;
+        this.steps = steps;
+        this.blockSize = checkpointSize + 8L * interval;
+    }
+
+    /**
+     * gets the sidecar file of a journal
+     */
+    public static String sidecar(String journal) {
+        return journal + ".idx";
+    }
+
+    /**
+     * Opens the index of a journal, building it first if it is missing or stale
+     * @param journal journal file (csv or binary)
+     * @return the index, to be closed by the caller
+     * @throws IOException if the journal or index can't be read or written
+     */
+    public static ReplayIndex open(String journal) throws IOException {
+        ReplayIndex index = tryOpen(journal);
+        if (index == null) {
+            build(journal, DEFAULT_INTERVAL);
+            index = tryOpen(journal);
+            if (index == null) {
+                throw new IOException("index of " + journal + " is unreadable");
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Helper function opening an existing sidecar
+     * @return the index, or null if there is none or it doesn't match the journal
+     */
+    private static ReplayIndex tryOpen(String journal) throws IOException {
+        File idx = new File(sidecar(journal));
+        if (!idx.isFile()) {
+            return null;
+        }
+        long length = new File(journal).length();
+        FileChannel ch = FileChannel.open(idx.toPath(), StandardOpenOption.READ);
+        // closed here unless it is handed to the index, also when reading throws
+        try {
+            ByteBuffer h = ByteBuffer.allocate(HEADER);
+            while (h.hasRemaining() && ch.read(h, h.position()) > 0) {
+                continue;
+            }
+            h.flip();
+            boolean ok = h.remaining() == HEADER;
+            for (int i = 0; ok && i < MAGIC.length; i++) {
+                ok = h.get() == MAGIC[i];
+            }
+            if (ok && h.getInt() == VERSION && h.getLong() == length
+                    && h.getLong() == Nim.tailCrc(journal, length)) {
+                int interval = h.getInt();
+                int checkpointSize = h.getInt();
+                long steps = h.getLong();
+                if (interval > 0 && checkpointSize > 0 && steps > 0) {
+                    ReplayIndex index = new ReplayIndex(ch, interval, checkpointSize, steps);
+                    ch = null;
+                    return index;
+                }
+            }
+            return null;
+        } finally {
+            if (ch != null) {
+                ch.close();
+            }
+        }
+    }
+
+    /**
+     * Builds (or rebuilds) the sidecar of a journal in one pass over it. The sidecar
+     * is written to a temporary file first and then moved into place.
+     * @param journal journal file (csv or binary)
+     * @param interval steps per checkpoint
+     * @throws IOException if the journal can't be read or the sidecar written
+     */
+    public static void build(String journal, int interval) throws IOException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        long length = new File(journal).length();
+        Path idx = Paths.get(sidecar(journal)).toAbsolutePath();
+        // a new file of our own, so two builds of the same journal don't write one file
+        Path tmp = Files.createTempFile(idx.getParent(), idx.getFileName().toString(), ".tmp");
+        try {
+            Builder b = new Builder(interval);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+                 JournalReader r = new JournalReader(journal)) {
+                b.out = out;
+                out.write(new byte[HEADER]);
+                b.step(-1);
+                boolean pending = false;
+                // offset just after the last record applied
+                long end = 0;
+                while (true) {
+                    int record;
+                    try {
+                        record = r.next();
+                    } catch (IllegalArgumentException e) {
+                        // lines that aren't records are skipped, as unpause does
+                        continue;
+                    }
+                    // records appended since length was read aren't covered by the header
+                    if (record == BinaryJournal.NONE || r.getPosition() > length) {
+                        break;
+                    }
+                    b.nim.apply(record);
+                    end = r.getPosition();
+                    pending = BinaryJournal.type(record) != BinaryJournal.DONE;
+                    if (!pending) {
+                        b.step(end);
+                    }
+                }
+                if (pending) {
+                    b.step(end);
+                }
+            }
+            try (RandomAccessFile f = new RandomAccessFile(tmp.toFile(), "rw")) {
+                f.write(MAGIC);
+                f.writeInt(VERSION);
+                f.writeLong(length);
+                f.writeLong(Nim.tailCrc(journal, length));
+                f.writeInt(interval);
+                f.writeInt(b.checkpointSize);
+                f.writeLong(b.steps);
+            }
+            Files.move(tmp, idx, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * The Builder class is the state of build: a journal-free game following the
+     * records, and the blocks written so far.
+     */
+    private static final class Builder {
+        private final Nim nim = new Nim(false);
+        private final int interval;
+        private DataOutputStream out;
+        private int checkpointSize = -1;
+        private long steps;
+
+        Builder(int interval) {
+            this.interval = interval;
+        }
+
+        /**
+         * Adds a step at an offset, starting a new block with a checkpoint if due
+         */
+        void step(long offset) throws IOException {
+            if (steps % interval == 0) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                nim.checkpoint().writeTo(new DataOutputStream(bytes));
+                // a bounded history keeps every checkpoint the same size
+                if (checkpointSize < 0) {
+                    checkpointSize = bytes.size();
+                } else if (checkpointSize != bytes.size()) {
+                    throw new IOException("checkpoints changed size");
+                }
+                bytes.writeTo(out);
+            }
+            out.writeLong(offset);
+            steps++;
+        }
+    }
+
+    /**
+     * gets the byte offset in the journal just after a step, -1 for step 0
+     * @param step step, 0 to getSteps() - 1
+     * @throws IOException if the sidecar can't be read
+     */
+    public long getOffset(long step) throws IOException {
+        check(step);
+        ByteBuffer b = read(HEADER + step / interval * blockSize + checkpointSize
+                + 8 * (step % interval), 8);
+        return b.getLong();
+    }
+
+    /**
+     * gets the last step at or before a step that has a checkpoint
+     * @param step step, 0 to getSteps() - 1
+     */
+    public long getCheckpointStep(long step) {
+        check(step);
+        return step - step % interval;
+    }
+
+    /**
+     * Reads the checkpoint of the game at getCheckpointStep(step)
+     * @param step step, 0 to getSteps() - 1
+     * @return the snapshot, to be restored into a journal-free game
+     * @throws IOException if the sidecar can't be read
+     */
+    public Nim.Checkpoint getCheckpoint(long step) throws IOException {
+        check(step);
+        ByteBuffer b = read(HEADER + step / interval * blockSize, checkpointSize);
+        return Nim.Checkpoint.readFrom(new DataInputStream(
+                new ByteArrayInputStream(b.array(), 0, checkpointSize)));
+    }
+
+    /**
+     * Finds the step a byte offset of the journal falls in, by binary search
+     * over the offsets
+     * @param offset byte offset in the journal
+     * @return the last step whose offset is at or before offset
+     * @throws IOException if the sidecar can't be read
+     */
+    public long findStep(long offset) throws IOException {
+        long lo = 0;
+        long hi = steps - 1;
+        while (lo < hi) {
+            long mid = (lo + hi + 1) >>> 1;
+            if (getOffset(mid) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private void check(long step) {
+        if (step < 0 || step >= steps) {
+            throw new IndexOutOfBoundsException("step " + step + " of " + steps);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0) {
+                throw new IOException("index is truncated");
+            }
+        }
+        b.flip();
+        return b;
+    }
+
+    // the following are get methods for the fields of this class
+    public long getSteps() {
+        return steps;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
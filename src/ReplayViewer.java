@@ -0,0 +1,132 @@
+import javax.swing.*;
+import java.awt.*;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The ReplayViewer class steps through a recorded game (a journal such as
+ * gameasfile.csv) on a journal-free Nim, without replaying from the start the way
+ * unpause does. seek goes to any step (turn boundary, see ReplayIndex): the
+ * checkpoint at or before it is restored from the sidecar index and only the
+ * records after that checkpoint are walked through, at most one interval of turns.
+ * Moving forward within the same interval just continues from the current step.
+ * The journal is read through a JournalReader from the checkpoint's offset, so
+ * even a log of many gigabytes is never loaded.
+ *
+ * Run from the command line as: ReplayViewer [journal], which shows the game with
+ * a slider to scrub through its turns.
+ */
+public class ReplayViewer implements Closeable {
+
+    private final String journal;
+    private final ReplayIndex index;
+    // game shown, never written to a file
+    private final Nim nim = new Nim(false);
+    // step the game is at
+    private long step;
+
+    /**
+     * Opens a journal for viewing, building its index if needed, at step 0
+     * @param journal journal file (csv or binary)
+     * @throws IOException if the journal or its index can't be read
+     */
+    public ReplayViewer(String journal) throws IOException {
+        this.journal = journal;
+        this.index = ReplayIndex.open(journal);
+        this.step = 0;
+        nim.restore(index.getCheckpoint(0));
+    }
+
+    /**
+     * Puts the game in the state it was in at a step
+     * @param target step, 0 to getSteps() - 1
+     * @throws IOException if the journal or its index can't be read
+     */
+    public void seek(long target) throws IOException {
+        long from = index.getCheckpointStep(target);
+        // restore unless the target is ahead of us in the same interval
+        if (step < from || step > target) {
+            nim.restore(index.getCheckpoint(target));
+            step = from;
+        }
+        if (step < target) {
+            long end = index.getOffset(target);
+            try (JournalReader r = new JournalReader(journal, index.getOffset(step))) {
+                while (r.getPosition() < end) {
+                    int record;
+                    try {
+                        record = r.next();
+                    } catch (IllegalArgumentException e) {
+                        continue;
+                    }
+                    if (record == BinaryJournal.NONE) {
+                        break;
+                    }
+                    nim.apply(record);
+                }
+            }
+        }
+        step = target;
+    }
+
+    /**
+     * Goes to the step a byte offset of the journal falls in
+     * @param offset byte offset in the journal
+     * @throws IOException if the journal or its index can't be read
+     */
+    public void seekOffset(long offset) throws IOException {
+        seek(index.findStep(offset));
+    }
+
+    // the following are get methods for the fields of this class
+    public Nim getNim() {
+        return nim;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    public long getSteps() {
+        return index.getSteps();
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String journal = args.length > 0 ? args[0] : Nim.FILE;
+        final ReplayViewer viewer = new ReplayViewer(journal);
+        SwingUtilities.invokeLater(() -> {
+            final JFrame frame = new JFrame("n i m replay - " + journal);
+            frame.setLocation(300, 300);
+            final JLabel status = new JLabel();
+            final GameBoard board = new GameBoard(status, viewer.getNim());
+            board.setEditable(false);
+            final JLabel turn = new JLabel();
+            final JSlider slider = new JSlider(0, (int) Math.min(Integer.MAX_VALUE, viewer.getSteps() - 1), 0);
+            slider.addChangeListener(e -> {
+                try {
+                    viewer.seek(slider.getValue());
+                } catch (IOException ex) {
+                    status.setText("can't read " + journal);
+                }
+                turn.setText("step " + viewer.getStep() + " of " + (viewer.getSteps() - 1));
+                board.refresh();
+            });
+            final JPanel controls = new JPanel(new BorderLayout());
+            controls.add(slider, BorderLayout.CENTER);
+            controls.add(turn, BorderLayout.EAST);
+            controls.add(status, BorderLayout.SOUTH);
+            frame.add(board, BorderLayout.CENTER);
+            frame.add(controls, BorderLayout.SOUTH);
+            turn.setText("step 0 of " + (viewer.getSteps() - 1));
+            board.refresh();
+            frame.pack();
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setVisible(true);
+        });
+    }
+}
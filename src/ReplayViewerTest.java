@@ -0,0 +1,132 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The ReplayViewerTest class tests seeking through journals with ReplayIndex and
+ * ReplayViewer.
+ */
+
+public class ReplayViewerTest {
+
+    /**
+     * Plays a game with undos and redos into a file, noting the board and player
+     * at every step (after each done, and at the end)
+     */
+    private static List<int[]> record(String path) {
+        List<int[]> states = new ArrayList<>();
+        Nim n = new Nim(path);
+        states.add(new int[] {n.getBits(), 1});
+        Random rnd = new Random(7);
+        int turns = 0;
+        while (!n.getGameOver()) {
+            NimAI.playRandomTurn(n, rnd);
+            if (n.getGameOver()) {
+                break;
+            }
+            states.add(new int[] {n.getBits(), n.getCurrentPlayer() ? 1 : 2});
+            if (++turns % 3 == 0) {
+                n.undo();
+                n.redo();
+                n.undo();
+                n.move(0, 0);
+                n.undo();
+            }
+        }
+        states.add(new int[] {n.getBits(), n.getCurrentPlayer() ? 1 : 2});
+        n.close();
+        return states;
+    }
+
+    private static void checkAll(ReplayViewer v, List<int[]> states) throws IOException {
+        assertEquals(states.size(), v.getSteps());
+        Random rnd = new Random(1);
+        for (int i = 0; i < 3 * states.size(); i++) {
+            int s = i < states.size() ? i : rnd.nextInt(states.size());
+            v.seek(s);
+            assertEquals(s, v.getStep());
+            assertEquals(states.get(s)[0], v.getNim().getBits());
+            assertEquals(states.get(s)[1] == 1, v.getNim().getCurrentPlayer());
+        }
+    }
+
+    private static void delete(String... paths) {
+        for (String p : paths) {
+            new File(p).delete();
+            new File(ReplayIndex.sidecar(p)).delete();
+        }
+    }
+
+    @Test
+    public void seekCsv() throws IOException {
+        String path = File.createTempFile("replay", ".csv").getPath();
+        List<int[]> states = record(path);
+        ReplayIndex.build(path, 2);
+        try (ReplayViewer v = new ReplayViewer(path)) {
+            checkAll(v, states);
+        }
+        delete(path);
+    }
+
+    @Test
+    public void seekBinary() throws IOException {
+        String path = File.createTempFile("replay", ".csv").getPath();
+        String bin = path + ".nimj";
+        List<int[]> states = record(path);
+        BinaryJournal.csvToBinary(path, bin);
+        ReplayIndex.build(bin, 3);
+        try (ReplayViewer v = new ReplayViewer(bin)) {
+            checkAll(v, states);
+        }
+        delete(path, bin);
+    }
+
+    @Test
+    public void staleIndexIsRebuilt() throws IOException {
+        String path = File.createTempFile("replay", ".csv").getPath();
+        Files.write(Paths.get(path), "start\nmove,1,3,0\ndone,1".getBytes());
+        try (ReplayIndex index = ReplayIndex.open(path)) {
+            assertEquals(2, index.getSteps());
+        }
+        Files.write(Paths.get(path), "\nmove,2,2,0\ndone,2\nmove,1,1,0".getBytes(),
+                StandardOpenOption.APPEND);
+        try (ReplayIndex index = ReplayIndex.open(path)) {
+            assertEquals(4, index.getSteps());
+            assertEquals(-1, index.getOffset(0));
+            assertEquals(new File(path).length(), index.getOffset(3));
+            assertEquals(1, index.findStep(index.getOffset(1) + 3));
+        }
+        try (ReplayViewer v = new ReplayViewer(path)) {
+            v.seek(3);
+            assertFalse(v.getNim().getCell(1, 0));
+            assertFalse(v.getNim().getStartOfTurn());
+            v.seek(1);
+            assertTrue(v.getNim().getCell(2, 0));
+            assertFalse(v.getNim().getCell(3, 0));
+        }
+        delete(path);
+    }
+
+    @Test
+    public void buildLeavesOnlyTheSidecar() throws IOException {
+        File dir = Files.createTempDirectory("replay").toFile();
+        String path = new File(dir, "game.csv").getPath();
+        record(path);
+        ReplayIndex.build(path, 4);
+        ReplayIndex.build(path, ReplayIndex.DEFAULT_INTERVAL);
+        String[] names = dir.list();
+        java.util.Arrays.sort(names);
+        assertArrayEquals(new String[] {"game.csv", "game.csv.idx"}, names);
+        delete(path);
+        dir.delete();
+    }
+}
@@ -7,8 +7,8 @@ import java.awt.*;
  *
  * In this method, a JFrame is created overall. There is a JPanel that is a
  * status_panel with the JLabel displaying the "player 1's turn"-type messages.
- * There is another JPanel that is a control panel with the reset, undo, done,
- * pause, and unpause buttons. These all have action listeners that call methods
+ * There is another JPanel that is a control panel with the reset, undo, redo, done,
+ * pause, and unpause buttons and a vs computer checkbox. These all have action listeners that call methods
  * in GameBoard, which call methods in Nim to accomplish the actions. There is
  * also an instructions button that is toggled when the button is clicked/not
  * that displays a new window (JFrame) with the instructions. Lastly, it calls
@@ -43,11 +43,13 @@ public class RunNim implements Runnable {
                 "<br>to the next player (be sure to do this). " +
                 "<br><br>- undo allows for the undoing of all moves on current" +
                 "<br>turn, or if the turn hasn't started, the previous turn." +
+                "<br><br>- redo puts back the turn undone most recently." +
                 "<br><br>- reset restarts the entire game board and can be clicked" +
                 "<br>at any time." +
                 "<br><br>- pause stops all actions except reset; unpause after" +
                 "<br>pause resumes the game to where it was when paused." +
-                "<br><br>- the player left with the last match loses.</html>");
+                "<br><br>- the player left with the last match loses." +
+                "<br><br>- check vs computer to have the computer play player 2.</html>");
         instruct_panel.add(words);
 
         // control panel
@@ -73,6 +75,11 @@ public class RunNim implements Runnable {
         undo.addActionListener(e -> board.undo());
         control_panel.add(undo);
 
+        // create a redo button
+        final JButton redo = new JButton("redo");
+        redo.addActionListener(e -> board.redo());
+        control_panel.add(redo);
+
         // create a turn done button
         final JButton done = new JButton("done");
         done.addActionListener(e -> board.done());
@@ -88,6 +95,11 @@ public class RunNim implements Runnable {
         unpause.addActionListener(e -> board.unpause());
         control_panel.add(unpause);
 
+        // create a checkbox to let the computer play player 2
+        final JCheckBox computer = new JCheckBox("vs computer");
+        computer.addActionListener(e -> board.setComputerOpponent(computer.isSelected()));
+        control_panel.add(computer);
+
         // Put the frame on the screen
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -0,0 +1,139 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The SelfPlay class is a headless batch runner that plays complete games of Nim
+ * against itself on a fork-join pool. It only drives the model (move, turnDone,
+ * undo through NimAI), so no Swing classes are ever loaded, and every game uses
+ * a journal-free Nim so parallel workers don't share or write a file.
+ *
+ * Each player is either the optimal NimAI or a random player. The games are split
+ * into batches that each reuse one Nim via resetBoard, and the batch results are
+ * summed into a Result with wins per player and games per second.
+ *
+ * Run from the command line as: SelfPlay [games] [optimal|random] [optimal|random] [threads]
+ */
+public final class SelfPlay {
+
+    // number of games a single fork-join task plays without splitting further
+    private static final long BATCH = 4096;
+
+    private SelfPlay() {
+    }
+
+    /**
+     * The Result class holds the totals of one run.
+     */
+    public static final class Result {
+        public final long games;
+        public final long player1Wins;
+        public final long player2Wins;
+        public final long turns;
+        public final long nanos;
+
+        Result(long games, long player1Wins, long player2Wins, long turns, long nanos) {
+            this.games = games;
+            this.player1Wins = player1Wins;
+            this.player2Wins = player2Wins;
+            this.turns = turns;
+            this.nanos = nanos;
+        }
+
+        public double gamesPerSecond() {
+            return nanos == 0 ? 0 : games * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games in %.3f s (%.0f games/s)%n"
+                    + "player 1 wins: %d (%.2f%%)%nplayer 2 wins: %d (%.2f%%)%n"
+                    + "average turns per game: %.2f",
+                    games, nanos / 1e9, gamesPerSecond(),
+                    player1Wins, 100.0 * player1Wins / Math.max(1, games),
+                    player2Wins, 100.0 * player2Wins / Math.max(1, games),
+                    (double) turns / Math.max(1, games));
+        }
+    }
+
+    /**
+     * Plays a number of games in parallel
+     * @param games number of complete games to play
+     * @param optimal1 true if player 1 is NimAI, false if it plays randomly
+     * @param optimal2 true if player 2 is NimAI, false if it plays randomly
+     * @param seed seed for the random players, so runs can be repeated
+     * @param pool pool to run on
+     * @return totals over all games
+     */
+    public static Result run(long games, boolean optimal1, boolean optimal2, long seed,
+                             ForkJoinPool pool) {
+        long start = System.nanoTime();
+        long[] totals = pool.invoke(new Batch(0, games, optimal1, optimal2, seed));
+        return new Result(games, totals[0], totals[1], totals[2], System.nanoTime() - start);
+    }
+
+    /**
+     * The Batch class plays games [lo, hi), splitting in half while the range is
+     * larger than BATCH. It returns {player 1 wins, player 2 wins, turns}.
+     */
+    private static final class Batch extends RecursiveTask<long[]> {
+        // fork-join tasks are Serializable, but these are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final long lo;
+        private final long hi;
+        private final boolean optimal1;
+        private final boolean optimal2;
+        private final long seed;
+
+        Batch(long lo, long hi, boolean optimal1, boolean optimal2, long seed) {
+            this.lo = lo;
+            this.hi = hi;
+            this.optimal1 = optimal1;
+            this.optimal2 = optimal2;
+            this.seed = seed;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (hi - lo > BATCH) {
+                long mid = (lo + hi) >>> 1;
+                Batch left = new Batch(lo, mid, optimal1, optimal2, seed);
+                left.fork();
+                long[] right = new Batch(mid, hi, optimal1, optimal2, seed).compute();
+                long[] l = left.join();
+                return new long[] {l[0] + right[0], l[1] + right[1], l[2] + right[2]};
+            }
+            long[] totals = new long[3];
+            Random rnd = new Random(seed ^ lo);
+            Nim n = new Nim(false);
+            for (long g = lo; g < hi; g++) {
+                n.resetBoard();
+                while (!n.getGameOver()) {
+                    boolean optimal = n.getCurrentPlayer() ? optimal1 : optimal2;
+                    if (optimal) {
+                        NimAI.playTurn(n);
+                    } else {
+                        NimAI.playRandomTurn(n, rnd);
+                    }
+                    totals[2]++;
+                }
+                totals[n.checkWinner() - 1]++;
+            }
+            return totals;
+        }
+    }
+
+    public static void main(String[] args) {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        boolean optimal1 = args.length <= 1 || args[1].equals("optimal");
+        boolean optimal2 = args.length <= 2 || args[2].equals("optimal");
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        // one short run first so the timed run isn't measuring the JIT
+        run(Math.min(games, 100000), optimal1, optimal2, 1, pool);
+        System.out.println(run(games, optimal1, optimal2, 42, pool));
+        pool.shutdown();
+    }
+}
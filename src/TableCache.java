@@ -0,0 +1,310 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The TableCache class keeps GrundyTables and OutcomeTables in files, so a table
+ * is computed once per host instead of once per process. A table file is a header
+ * followed by the values exactly as the table reads them (native-order ints for
+ * Grundy values, one byte per position for outcomes), so opening one is mapping
+ * it read-only: nothing is parsed or copied, the table's buffer is the mapping
+ * itself, and every JVM on the host that maps the file shares the same pages of
+ * the page cache.
+ *
+ * The header holds a magic number, the format version, the kind of table, the
+ * rule it solves (as its octal code) and the table's parameters. A file that is
+ * missing, of another version or kind, written on a machine of the other byte
+ * order (its byte order mark doesn't read back), whose length doesn't match its
+ * header, or for a smaller table than asked for, is computed again and replaced.
+ * Files are written to a temp file of their own next to their final name and
+ * moved over it, so a process mapping a file never sees half of one, even with
+ * several processes filling the same directory.
+ *
+ * Tables opened by a cache are also kept in memory, so asking again in the same
+ * process is a map lookup. The default cache is in ./files/tables (or the
+ * nim.tables.dir property).
+ *
+ * Run from the command line as: TableCache [octal code] [size], which times
+ * opening the Grundy table of the rule and the outcomes of the classic board.
+ */
+public final class TableCache {
+
+    public static final String DEFAULT_DIR = System.getProperty("nim.tables.dir", "./files/tables");
+    public static final byte[] MAGIC = {'N', 'I', 'M', 'T'};
+    public static final int VERSION = 1;
+    // the following are the kinds of table
+    static final int GRUNDY = 1;
+    static final int OUTCOMES = 2;
+    // bytes of the header before the rule's code, which is padded to 8 bytes: magic,
+    // byte order mark, version, kind, 4 parameters, length of the code, unused
+    private static final int HEADER = 40;
+    private static final int PARAMS = 16;
+    private static final int CODE_LENGTH = 32;
+
+    private final File dir;
+    // tables already opened, by file name
+    private final Map<String, Object> open = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor sets up a cache in a directory, created when a table is written
+     * @param dir directory of the table files
+     */
+    public TableCache(String dir) {
+        this.dir = new File(dir);
+    }
+
+    /**
+     * Creates a cache in DEFAULT_DIR
+     * @return new TableCache
+     */
+    public static TableCache getDefault() {
+        return new TableCache(DEFAULT_DIR);
+    }
+
+    /**
+     * gets the Grundy table of a rule, from its file if it has one that is big
+     * enough, computing and writing it otherwise
+     * @param rule rule to solve
+     * @param size number of heap sizes needed (a periodic table covers any)
+     * @return the table
+     * @throws IOException if the file can't be read or written
+     */
+    public GrundyTable grundy(MoveRule rule, int size) throws IOException {
+        String name = "grundy-" + fileName(rule) + ".tbl";
+        GrundyTable cached = (GrundyTable) open.get(name);
+        if (fits(cached, size)) {
+            return cached;
+        }
+        File file = new File(dir, name);
+        GrundyTable t = mapGrundy(file, rule);
+        if (!fits(t, size)) {
+            t = GrundyTable.compute(rule, size);
+            write(file, GRUNDY, rule, new int[] {t.getLength(), t.getPreperiod(), t.getPeriod(), 0},
+                    t.getValues());
+            t = mapGrundy(file, rule);
+            if (t == null) {
+                throw new IOException("can't read back " + file);
+            }
+        }
+        open.put(name, t);
+        return t;
+    }
+
+    private static boolean fits(GrundyTable t, int size) {
+        return t != null && (t.isPeriodic() || t.getLength() >= size);
+    }
+
+    /**
+     * gets the outcomes of every position of a few heaps, from its file if it has
+     * one, computing and writing it otherwise
+     * @param rule counts that can be taken from a heap
+     * @param misere true if the player making the last move loses
+     * @param heaps number of heaps
+     * @param max largest heap size
+     * @return the table
+     * @throws IOException if the file can't be read or written
+     */
+    public OutcomeTable outcomes(MoveRule rule, boolean misere, int heaps, int max) throws IOException {
+        String name = "outcomes-" + fileName(rule) + (misere ? "-misere-" : "-normal-")
+                + heaps + "x" + max + ".tbl";
+        OutcomeTable cached = (OutcomeTable) open.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        File file = new File(dir, name);
+        int[] params = {misere ? 1 : 0, heaps, max, OutcomeTable.size(heaps, max)};
+        ByteBuffer body = mapOutcomes(file, rule, params);
+        if (body == null) {
+            OutcomeTable t = OutcomeTable.compute(rule, misere, heaps, max);
+            write(file, OUTCOMES, rule, params, t.getOutcomes());
+            body = mapOutcomes(file, rule, params);
+            if (body == null) {
+                throw new IOException("can't read back " + file);
+            }
+        }
+        OutcomeTable t = new OutcomeTable(rule, misere, heaps, max, body);
+        open.put(name, t);
+        return t;
+    }
+
+    /**
+     * gets the outcomes of the classic board: 4 heaps of at most 7, any number
+     * from one row, misere
+     * @return the table
+     * @throws IOException if the file can't be read or written
+     */
+    public OutcomeTable classic() throws IOException {
+        return outcomes(MoveRule.nim(), true, Nim.ROWS, 2 * Nim.ROWS - 1);
+    }
+
+    /**
+     * Helper function mapping a Grundy table file, whatever its size
+     * @return the table, or null if the file is missing or can't be used
+     */
+    private static GrundyTable mapGrundy(File file, MoveRule rule) throws IOException {
+        ByteBuffer m = map(file, GRUNDY, rule);
+        if (m == null) {
+            return null;
+        }
+        int length = m.getInt(PARAMS);
+        int preperiod = m.getInt(PARAMS + 4);
+        int period = m.getInt(PARAMS + 8);
+        ByteBuffer body = body(m);
+        // the period has to lie inside the values, which fill the rest of the file
+        if (length < 1 || body.capacity() != 4L * length || m.getInt(PARAMS + 12) != 0
+                || preperiod < 0 || period < 0 || (period > 0 && (long) preperiod + period > length)) {
+            return null;
+        }
+        return GrundyTable.wrap(rule, body, length, preperiod, period);
+    }
+
+    /**
+     * Helper function mapping an outcome table file
+     * @return the body, or null if the file is missing or can't be used
+     */
+    private static ByteBuffer mapOutcomes(File file, MoveRule rule, int[] params) throws IOException {
+        ByteBuffer m = map(file, OUTCOMES, rule);
+        if (m == null) {
+            return null;
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (m.getInt(PARAMS + 4 * i) != params[i]) {
+                return null;
+            }
+        }
+        ByteBuffer body = body(m);
+        return body.capacity() != params[3] ? null : body;
+    }
+
+    /**
+     * Helper function giving the body of a mapped table file, after the header
+     */
+    private static ByteBuffer body(ByteBuffer m) {
+        ByteBuffer b = m.duplicate();
+        b.position(HEADER + pad(m.getInt(CODE_LENGTH)));
+        return b.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Helper function mapping a table file and checking its header
+     * @return the whole file as a native-order buffer, or null if it can't be used
+     */
+    private static ByteBuffer map(File file, int kind, MoveRule rule) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer m;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            if (ch.size() < HEADER || ch.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid once the channel is closed
+            m = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        m.order(ByteOrder.nativeOrder());
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (m.get(i) != MAGIC[i]) {
+                return null;
+            }
+        }
+        if (m.getInt(4) != nativeMark() || m.getInt(8) != VERSION || m.getInt(12) != kind) {
+            return null;
+        }
+        byte[] code = rule.toString().getBytes(StandardCharsets.UTF_8);
+        int codeLength = m.getInt(CODE_LENGTH);
+        if (codeLength != code.length || HEADER + pad(codeLength) > m.capacity()
+                || m.getInt(CODE_LENGTH + 4) != 0) {
+            return null;
+        }
+        for (int i = 0; i < pad(codeLength); i++) {
+            if (m.get(HEADER + i) != (i < code.length ? code[i] : 0)) {
+                return null;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Helper function writing a table file: the header, then the body as is
+     */
+    private void write(File file, int kind, MoveRule rule, int[] params, ByteBuffer body) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        byte[] code = rule.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER + pad(code.length)).order(ByteOrder.nativeOrder());
+        header.put(MAGIC);
+        header.putInt(nativeMark());
+        header.putInt(VERSION);
+        header.putInt(kind);
+        for (int p : params) {
+            header.putInt(p);
+        }
+        header.putInt(CODE_LENGTH, code.length);
+        header.position(HEADER);
+        header.put(code);
+        header.position(0);
+        // a new file of our own, so no other thread or process writes the same one
+        Path tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer b = body.duplicate();
+                while (header.hasRemaining()) {
+                    ch.write(header);
+                }
+                while (b.hasRemaining()) {
+                    ch.write(b);
+                }
+            }
+            // temp files are only readable by their owner, tables are for everyone
+            tmp.toFile().setReadable(true, false);
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Helper function giving a number that reads back the same only in the byte
+     * order it was written in
+     */
+    private static int nativeMark() {
+        return 0x01020304;
+    }
+
+    private static int pad(int n) {
+        return (n + 7) & ~7;
+    }
+
+    /**
+     * Helper function turning a rule's code into part of a file name
+     */
+    private static String fileName(MoveRule rule) {
+        return rule.toString().replaceAll("[^0-9A-Za-z.]", "_");
+    }
+
+    public static void main(String[] args) throws IOException {
+        MoveRule rule = MoveRule.octal(args.length > 0 ? args[0] : "0.6");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long start = System.nanoTime();
+        GrundyTable g = getDefault().grundy(rule, size);
+        System.out.printf("%s: %d values in %.3f ms%n", rule, g.getLength(), (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        OutcomeTable o = getDefault().classic();
+        System.out.printf("classic board: %d positions in %.3f ms, first player %s%n",
+                OutcomeTable.size(o.getHeaps(), o.getMax()), (System.nanoTime() - start) / 1e6,
+                o.isWin(new long[] {1, 3, 5, 7}) ? "wins" : "loses");
+    }
+}
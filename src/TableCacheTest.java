@@ -0,0 +1,134 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * The TableCacheTest class tests OutcomeTable and the table files of TableCache.
+ */
+
+public class TableCacheTest {
+
+    private static File tempDir() throws IOException {
+        File dir = Files.createTempDirectory("nim-tables").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    @Test
+    public void classicOutcomesFollowMisereRule() {
+        OutcomeTable t = OutcomeTable.compute(MoveRule.nim(), true, 4, 7);
+        for (int a = 0; a <= 1; a++) {
+            for (int b = 0; b <= 3; b++) {
+                for (int c = 0; c <= 5; c++) {
+                    for (int d = 0; d <= 7; d++) {
+                        long[] heaps = {a, b, c, d};
+                        boolean singles = a <= 1 && b <= 1 && c <= 1 && d <= 1;
+                        // misere nim: with only single matches, win on an even count
+                        boolean win = singles ? (a + b + c + d) % 2 == 0 : (a ^ b ^ c ^ d) != 0;
+                        assertEquals(a + " " + b + " " + c + " " + d, win, t.isWin(heaps));
+                    }
+                }
+            }
+        }
+        assertFalse(t.isWin(new long[] {7, 5, 3, 1}));
+        assertTrue(t.isWin(new Nim(false)) == t.isWin(new long[] {1, 3, 5, 7}));
+    }
+
+    @Test
+    public void normalOutcomesFollowGrundy() {
+        MoveRule rule = MoveRule.subtraction(1, 3, 4);
+        OutcomeTable t = OutcomeTable.compute(rule, false, 3, 20);
+        GrundyTable g = GrundyTable.compute(rule, 21);
+        for (int a = 0; a <= 20; a++) {
+            for (int b = 0; b <= 20; b++) {
+                long[] heaps = {a, b, (a * 7 + b) % 21};
+                assertEquals(g.get(heaps) != 0, t.isWin(heaps));
+            }
+        }
+    }
+
+    @Test
+    public void grundyReadBackFromFile() throws IOException {
+        File dir = tempDir();
+        MoveRule rule = MoveRule.octal("0.6");
+        GrundyTable computed = new TableCache(dir.getPath()).grundy(rule, 2000);
+        File file = new File(dir, "grundy-0.6.tbl");
+        assertTrue(file.isFile());
+        long modified = file.lastModified();
+        // a new cache, as another process would, maps the same file
+        GrundyTable mapped = new TableCache(dir.getPath()).grundy(rule, 1500);
+        assertEquals(computed.getLength(), mapped.getLength());
+        for (int h = 0; h < 2000; h++) {
+            assertEquals(computed.get(h), mapped.get(h));
+        }
+        assertEquals(modified, file.lastModified());
+        // asking for more than the file has computes it again
+        assertEquals(3000, new TableCache(dir.getPath()).grundy(rule, 3000).getLength());
+    }
+
+    @Test
+    public void periodicGrundyCoversAnySize() throws IOException {
+        File dir = tempDir();
+        TableCache cache = new TableCache(dir.getPath());
+        GrundyTable g = cache.grundy(MoveRule.octal("0.77"), 5000);
+        assertTrue(g.isPeriodic());
+        assertSame(g, cache.grundy(MoveRule.octal("0.77"), 1 << 28));
+        GrundyTable mapped = new TableCache(dir.getPath()).grundy(MoveRule.octal("0.77"), 1 << 28);
+        assertEquals(12, mapped.getPeriod());
+        assertEquals(g.get(1L << 33), mapped.get(1L << 33));
+    }
+
+    @Test
+    public void wrongLengthIsRebuilt() throws IOException {
+        File dir = tempDir();
+        MoveRule rule = MoveRule.octal("0.6");
+        new TableCache(dir.getPath()).grundy(rule, 1000);
+        // computed apart, the first table maps the file that is cut below
+        GrundyTable computed = GrundyTable.compute(rule, 1000);
+        File grundy = new File(dir, "grundy-0.6.tbl");
+        new TableCache(dir.getPath()).classic();
+        OutcomeTable t = OutcomeTable.compute(MoveRule.nim(), true, 4, 7);
+        File outcomes = new File(dir, "outcomes-0.333...-misere-4x7.tbl");
+        long grundyLength = grundy.length();
+        long outcomesLength = outcomes.length();
+        try (RandomAccessFile raf = new RandomAccessFile(grundy, "rw")) {
+            // cut off in the middle of the values
+            raf.setLength(grundyLength - 6);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(outcomes, "rw")) {
+            // garbage past the end
+            raf.setLength(outcomesLength + 3);
+        }
+        TableCache cache = new TableCache(dir.getPath());
+        assertEquals(computed.get(999), cache.grundy(rule, 1000).get(999));
+        assertEquals(t.isWin(new long[] {1, 3, 5, 6}), cache.classic().isWin(new long[] {1, 3, 5, 6}));
+        assertEquals(grundyLength, grundy.length());
+        assertEquals(outcomesLength, outcomes.length());
+        // nothing is left behind but the tables
+        assertEquals(2, dir.list().length);
+    }
+
+    @Test
+    public void staleVersionIsRebuilt() throws IOException {
+        File dir = tempDir();
+        OutcomeTable t = new TableCache(dir.getPath()).classic();
+        File file = new File(dir, "outcomes-0.333...-misere-4x7.tbl");
+        assertTrue(file.isFile());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // version is the third int
+            raf.seek(8);
+            raf.write(new byte[] {9, 9, 9, 9});
+        }
+        OutcomeTable rebuilt = new TableCache(dir.getPath()).classic();
+        assertEquals(t.isWin(new long[] {1, 3, 5, 6}), rebuilt.isWin(new long[] {1, 3, 5, 6}));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(8);
+            assertNotEquals(0x09090909, raf.readInt());
+        }
+    }
+}
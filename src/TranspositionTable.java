@@ -0,0 +1,170 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TranspositionTable class remembers what a search found out about positions
+ * it has seen, by their 64-bit hash (Nim.getHash, or PositionKey.hash to share
+ * entries between boards that only differ by symmetry), so a position reached
+ * again through other moves isn't searched again. It has a fixed number of slots,
+ * a power of two picked by the low bits of the hash, and never allocates or locks
+ * after it is created, so any number of search threads can share one.
+ *
+ * Each slot is two longs, the hash xor the data and the data. Two threads writing
+ * the same slot at once can leave one half of each, but then the hash doesn't come
+ * back out of the xor, so the torn slot just reads as a miss. Data always has its
+ * top bit set, so an empty slot (two zeros) is a miss too.
+ *
+ * When a new entry falls on a slot holding another position, ALWAYS_REPLACE
+ * overwrites it, and DEPTH_PREFERRED keeps it if it was searched deeper (it saved
+ * more work). The same position is always overwritten.
+ *
+ * An entry packs a value (a signed 16-bit score, e.g. 1 for a win), the depth it
+ * was searched to, whether the value is exact or a bound, and the best move.
+ */
+public final class TranspositionTable {
+
+    // the following are the replacement policies
+    public static final int ALWAYS_REPLACE = 0;
+    public static final int DEPTH_PREFERRED = 1;
+    // the following say what the value of an entry is
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    // returned by probe when the position isn't in the table
+    public static final long MISS = 0;
+
+    private static final long VALID = 1L << 63;
+
+    // two longs per slot: hash ^ data, then data
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final int policy;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Constructor sets up an empty table
+     * @param capacity number of entries, rounded up to a power of two
+     * @param policy ALWAYS_REPLACE or DEPTH_PREFERRED
+     */
+    public TranspositionTable(int capacity, int policy) {
+        if (capacity < 1 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^29");
+        }
+        if (policy != ALWAYS_REPLACE && policy != DEPTH_PREFERRED) {
+            throw new IllegalArgumentException("unknown replacement policy " + policy);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicLongArray(2 * size);
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Looks a position up
+     * @param hash hash of the position
+     * @return the entry's data (see value, depth, bound and move), or MISS
+     */
+    public long probe(long hash) {
+        probes.increment();
+        int i = 2 * index(hash);
+        long data = slots.get(i + 1);
+        if ((slots.get(i) ^ data) != hash || data == MISS) {
+            return MISS;
+        }
+        hits.increment();
+        return data;
+    }
+
+    /**
+     * Stores what a search found out about a position, following the policy
+     * @param hash hash of the position
+     * @param value score, -32768 to 32767
+     * @param depth depth searched to, 0 to 255
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param move best move found, 16 bits (e.g. a mask of matches taken)
+     * @return true if the entry was written
+     */
+    public boolean store(long hash, int value, int depth, int bound, int move) {
+        long data = pack(value, depth, bound, move);
+        int i = 2 * index(hash);
+        if (policy == DEPTH_PREFERRED) {
+            long old = slots.get(i + 1);
+            boolean same = (slots.get(i) ^ old) == hash;
+            if (old != MISS && !same && depth(old) > depth) {
+                return false;
+            }
+        }
+        slots.set(i, hash ^ data);
+        slots.set(i + 1, data);
+        stores.increment();
+        return true;
+    }
+
+    private int index(long hash) {
+        return (int) hash & mask;
+    }
+
+    /**
+     * Helper function packing an entry: move in bits 0 to 15, value in 16 to 31,
+     * depth in 32 to 39, bound in 40 and 41, and the valid bit on top
+     */
+    static long pack(int value, int depth, int bound, int move) {
+        return VALID | (long) (bound & 3) << 40 | (long) (depth & 0xFF) << 32
+                | (long) (value & 0xFFFF) << 16 | (move & 0xFFFF);
+    }
+
+    // the following unpack the data returned by probe
+    public static int value(long data) {
+        return (short) (data >>> 16);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 32) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 40) & 3;
+    }
+
+    public static int move(long data) {
+        return (int) data & 0xFFFF;
+    }
+
+    /**
+     * Empties the table and its counters
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, 0);
+        }
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    // the following are get methods for the size and counters of this table
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+}